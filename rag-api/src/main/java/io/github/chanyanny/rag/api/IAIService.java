@@ -1,15 +1,36 @@
 package io.github.chanyanny.rag.api;
 
+import java.util.Map;
+
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.http.codec.ServerSentEvent;
 
+import io.github.chanyanny.rag.api.response.Response;
+import io.github.chanyanny.rag.api.response.StreamDelta;
 import reactor.core.publisher.Flux;
 
 
 public interface IAIService {
 
-    ChatResponse generate(String model, String message);
-
-    Flux<ChatResponse> generateStream(String model, String message);
+    ChatResponse generate(String model, String message, String sessionId);
+
+    /**
+     * 流式生成，推送精简的增量事件，支持 Last-Event-ID 断线续传
+     * 
+     * @param model 模型名称
+     * @param message 用户消息
+     * @param sessionId 会话 ID
+     * @param lastEventId 断线重连时最后收到的事件 ID
+     * @return SSE 事件流
+     */
+    Flux<ServerSentEvent<StreamDelta>> generateStream(String model, String message, String sessionId, String lastEventId);
+
+    /**
+     * 查询会话的提示词 token 统计
+     * 
+     * @param sessionId 会话 ID
+     * @return 统计信息
+     */
+    Response<Map<String, Long>> querySessionStats(String sessionId);
 
 }
-
@@ -2,10 +2,12 @@ package io.github.chanyanny.rag.api;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.web.multipart.MultipartFile;
 
 import io.github.chanyanny.rag.api.response.Response;
+import jakarta.servlet.http.HttpServletRequest;
 
 public interface IRAGService {
 
@@ -27,6 +29,14 @@ public interface IRAGService {
      */
     Response<String> uploadFile(String tag, List<MultipartFile> files);
 
+    /**
+     * 流式上传文件，边接收边解析入库，支持 zip / tar 压缩包
+     * 
+     * @param request multipart 请求，tag 字段需在文件之前
+     * @return 
+     */
+    Response<String> uploadFileStream(HttpServletRequest request);
+
 
     /**
      * 分析 Git 仓库
@@ -38,4 +48,11 @@ public interface IRAGService {
      */
     Response<String> analyzeGitRepository(String repoURL, String token) throws Exception;
 
+    /**
+     * 查询检索缓存命中率
+     * 
+     * @return 查询向量缓存与检索结果缓存的命中次数及命中率
+     */
+    Response<Map<String, String>> queryCacheStats();
+
 }
@@ -0,0 +1,35 @@
+package io.github.chanyanny.rag.api.cache;
+
+/**
+ * 缓存命中统计
+ * 各节点在同一个 Redis Hash 中累加计数，缓存组件（写入方）与统计接口（读取方）共用这里的键和字段名
+ */
+public final class CacheStats {
+
+    /**
+     * 计数所在的 Redis Hash
+     */
+    public static final String KEY = "rag:cache:stats";
+
+    /**
+     * 查询向量缓存
+     */
+    public static final String EMBEDDING = "embedding";
+
+    /**
+     * 检索结果缓存
+     */
+    public static final String SEARCH = "search";
+
+    private CacheStats() {
+    }
+
+    public static String hitsField(String level) {
+        return level + "_hits";
+    }
+
+    public static String missesField(String level) {
+        return level + "_misses";
+    }
+
+}
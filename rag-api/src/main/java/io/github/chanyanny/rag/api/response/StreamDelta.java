@@ -0,0 +1,33 @@
+package io.github.chanyanny.rag.api.response;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 流式输出的增量事件数据
+ * 空字段不序列化，增量事件只携带 text
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@NoArgsConstructor
+@AllArgsConstructor
+public class StreamDelta implements Serializable {
+
+    /**
+     * 增量文本（snapshot 事件为截至当前的完整文本，failed 事件为错误信息）
+     */
+    private String text;
+
+    /**
+     * 结束原因，仅 done / failed 事件携带
+     */
+    private String finishReason;
+
+}
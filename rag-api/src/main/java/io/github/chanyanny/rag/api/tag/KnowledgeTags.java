@@ -0,0 +1,17 @@
+package io.github.chanyanny.rag.api.tag;
+
+/**
+ * 知识库标签登记
+ * 上传接口（写入方）、标签列表接口与向量存储路由（读取方）共用这里的 Redis 键
+ */
+public final class KnowledgeTags {
+
+    /**
+     * 所有知识库标签的 Redis Set
+     */
+    public static final String ALL_TAGS_KEY = "rag:all_tags";
+
+    private KnowledgeTags() {
+    }
+
+}
@@ -1,11 +1,28 @@
 package io.github.chanyanny.rag.config;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.pinecone.PineconeVectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import io.github.chanyanny.rag.vectorstore.CachingEmbeddingModel;
+import io.github.chanyanny.rag.api.tag.KnowledgeTags;
+import io.github.chanyanny.rag.vectorstore.CachingVectorStore;
+import io.github.chanyanny.rag.vectorstore.PineconeNamespaceClient;
+import io.github.chanyanny.rag.vectorstore.TagRoutingVectorStore;
+import jakarta.annotation.Resource;
 
 /**
  * Pinecone 向量存储配置类
@@ -14,6 +31,24 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class PineconeEmbeddingStoreConfig {
 
+    private static final String SHARDED_TAGS_KEY = "rag:vectorstore:sharded_tags";
+
+    private static final String LEGACY_TAGS_KEY = "rag:vectorstore:legacy_tags";
+
+    private static final String SHARDING_ENABLED_KEY = "rag:vectorstore:sharding_enabled_at";
+
+    /**
+     * 首次启用分片时把当时已有的标签记为历史标签，之后不再变化；多节点同时启动也只执行一次
+     * KEYS: 启用时间, 历史标签, 全部标签  ARGV: 启用时间
+     */
+    private static final RedisScript<Long> SNAPSHOT_LEGACY_TAGS_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('setnx', KEYS[1], ARGV[1]) == 1 then
+                redis.call('sunionstore', KEYS[2], KEYS[3])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
     /**
      * Pinecone API Key，从 yaml 读取
      */
@@ -32,16 +67,118 @@ public class PineconeEmbeddingStoreConfig {
     @Value("${spring.ai.vectorstore.pinecone.namespace}")
     private String nameSpace;
 
+    /**
+     * 是否按知识库标签拆分命名空间，关闭时所有标签共用默认命名空间
+     */
+    @Value("${rag.vectorstore.shard-by-tag:true}")
+    private boolean shardByTag;
+
+    /**
+     * 多标签检索时的并行扇出线程数
+     */
+    @Value("${rag.vectorstore.fan-out-parallelism:4}")
+    private int fanOutParallelism;
+
+    /**
+     * 嵌入模型名称，作为查询向量缓存键的一部分
+     */
+    @Value("${spring.ai.ollama.embedding.options.model}")
+    private String embeddingModelName;
+
+    /**
+     * 是否开启查询向量与检索结果缓存
+     */
+    @Value("${rag.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    /**
+     * 查询向量缓存时间（小时）
+     */
+    @Value("${rag.cache.embedding-ttl-hours:24}")
+    private long embeddingTtlHours;
+
+    /**
+     * 检索结果缓存时间（分钟）
+     */
+    @Value("${rag.cache.search-ttl-minutes:10}")
+    private long searchTtlMinutes;
+
+    /**
+     * 写入或删除后的稳定期（秒），Pinecone 数据变更在此期间可能尚未可见，检索结果不缓存
+     */
+    @Value("${rag.cache.settle-seconds:30}")
+    private long settleSeconds;
+
+    @Resource
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
     /**
      * 创建 PineconeVectorStore Bean
      * 依赖注入 OllamaEmbeddingModel
+     * 按 knowledgeTag 路由到 "命名空间-标签" 的独立命名空间（共用一个索引连接），未带标签的数据和历史标签仍走默认命名空间
+     * 外层包装查询向量缓存和检索结果缓存
      */
     @Bean
     public VectorStore pineconeVectorStore(OllamaEmbeddingModel ollamaEmbeddingModel) {
-        return PineconeVectorStore.builder(ollamaEmbeddingModel)
+        if (!cacheEnabled) {
+            return shardByTag ? tagRoutingStore(ollamaEmbeddingModel) : pineconeStore(ollamaEmbeddingModel, nameSpace);
+        }
+
+        CachingEmbeddingModel embeddingModel = new CachingEmbeddingModel(ollamaEmbeddingModel, stringRedisTemplate,
+                embeddingModelName, Duration.ofHours(embeddingTtlHours));
+        VectorStore store = shardByTag ? tagRoutingStore(embeddingModel) : pineconeStore(embeddingModel, nameSpace);
+        return new CachingVectorStore(store, embeddingModel, stringRedisTemplate, Duration.ofMinutes(searchTtlMinutes),
+                Duration.ofSeconds(settleSeconds));
+    }
+
+    private VectorStore tagRoutingStore(EmbeddingModel embeddingModel) {
+        return new TagRoutingVectorStore(
+                embeddingModel,
+                new PineconeNamespaceClient(apiKey, indexName),
+                nameSpace,
+                redisTagCatalog(),
+                fanOutParallelism);
+    }
+
+    /**
+     * 基于 Redis 的标签目录
+     * 历史标签在首次启用分片时一次性确定并缓存在内存中，之后新登记的标签都使用独立命名空间
+     */
+    private TagRoutingVectorStore.TagCatalog redisTagCatalog() {
+        redisTemplate.execute(SNAPSHOT_LEGACY_TAGS_SCRIPT,
+                List.of(SHARDING_ENABLED_KEY, LEGACY_TAGS_KEY, KnowledgeTags.ALL_TAGS_KEY),
+                String.valueOf(System.currentTimeMillis()));
+        Set<String> legacyMembers = redisTemplate.opsForSet().members(LEGACY_TAGS_KEY);
+        Set<String> legacyTags = legacyMembers != null ? Set.copyOf(legacyMembers) : Set.of();
+
+        return new TagRoutingVectorStore.TagCatalog() {
+
+            @Override
+            public Set<String> shardedTags() {
+                Set<String> tags = redisTemplate.opsForSet().members(SHARDED_TAGS_KEY);
+                return tags != null ? tags : Set.of();
+            }
+
+            @Override
+            public boolean isLegacy(String tag) {
+                return legacyTags.contains(tag);
+            }
+
+            @Override
+            public void registerShard(String tag) {
+                redisTemplate.opsForSet().add(SHARDED_TAGS_KEY, tag);
+            }
+        };
+    }
+
+    private VectorStore pineconeStore(EmbeddingModel embeddingModel, String namespace) {
+        return PineconeVectorStore.builder(embeddingModel)
                 .apiKey(apiKey)        // 注入 yaml 中的 API Key
                 .indexName(indexName)  // 注入 yaml 中的索引名称
-                .namespace(nameSpace) // 注入 yaml 中的命名空间
+                .namespace(namespace) // 注入 yaml 中的命名空间
                 .build();
     }
 
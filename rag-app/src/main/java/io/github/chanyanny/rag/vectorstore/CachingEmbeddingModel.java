@@ -0,0 +1,147 @@
+package io.github.chanyanny.rag.vectorstore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import io.github.chanyanny.rag.api.cache.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 带查询向量缓存的嵌入模型
+ * 只缓存单条文本的 embed(String)（向量检索时对查询文本的嵌入），文档批量嵌入直接透传
+ * 缓存存放在 Redis，按 模型名 + 文本摘要 作为键，多节点共享
+ * 检索时由 {@link CachingVectorStore} 先固定查询向量，存储内部（含多分片扇出）的再次嵌入直接复用，
+ * 每次检索只读一次缓存、只计一次命中或未命中
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final String KEY_PREFIX = "rag:cache:embedding:";
+
+    private final EmbeddingModel delegate;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final String modelName;
+
+    private final Duration ttl;
+
+    /**
+     * 检索期间固定的查询向量，按文本摘要索引
+     */
+    private final Map<String, Pinned> pinned = new ConcurrentHashMap<>();
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, StringRedisTemplate stringRedisTemplate,
+                                 String modelName, Duration ttl) {
+        this.delegate = delegate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.modelName = modelName;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String digest = Digests.sha256(text.getBytes(StandardCharsets.UTF_8));
+        Pinned current = pinned.get(digest);
+        if (current != null) {
+            return current.embedding();
+        }
+        return load(digest, text);
+    }
+
+    /**
+     * 计算查询向量并在检索期间固定，必须与 {@link #unpin(String)} 成对调用
+     * 同一查询被并发固定时按引用计数，最后一次 unpin 才释放
+     */
+    float[] pin(String text) {
+        String digest = Digests.sha256(text.getBytes(StandardCharsets.UTF_8));
+        float[] embedding = load(digest, text);
+        pinned.compute(digest, (key, current) -> current == null
+                ? new Pinned(embedding, 1)
+                : new Pinned(current.embedding(), current.refs() + 1));
+        return embedding;
+    }
+
+    void unpin(String text) {
+        String digest = Digests.sha256(text.getBytes(StandardCharsets.UTF_8));
+        pinned.computeIfPresent(digest, (key, current) -> current.refs() <= 1
+                ? null
+                : new Pinned(current.embedding(), current.refs() - 1));
+    }
+
+    /**
+     * 读取缓存，未命中时调用嵌入模型并回写，计入命中统计
+     */
+    private float[] load(String digest, String text) {
+        String key = KEY_PREFIX + modelName + ":" + digest;
+        try {
+            String cached = stringRedisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                stringRedisTemplate.opsForHash().increment(CacheStats.KEY, CacheStats.hitsField(CacheStats.EMBEDDING), 1);
+                return decode(cached);
+            }
+            stringRedisTemplate.opsForHash().increment(CacheStats.KEY, CacheStats.missesField(CacheStats.EMBEDDING), 1);
+        } catch (Exception e) {
+            log.warn("读取查询向量缓存失败，直接调用嵌入模型: {}", e.getMessage());
+            return delegate.embed(text);
+        }
+
+        float[] embedding = delegate.embed(text);
+        try {
+            stringRedisTemplate.opsForValue().set(key, encode(embedding), ttl);
+        } catch (Exception e) {
+            log.warn("写入查询向量缓存失败: {}", e.getMessage());
+        }
+        return embedding;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        return delegate.embed(documents, options, batchingStrategy);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    static String encode(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES);
+        buffer.asFloatBuffer().put(embedding);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    static float[] decode(String value) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value));
+        float[] embedding = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(embedding);
+        return embedding;
+    }
+
+    private record Pinned(float[] embedding, int refs) {
+    }
+
+}
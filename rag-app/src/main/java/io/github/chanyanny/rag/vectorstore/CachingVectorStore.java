@@ -0,0 +1,267 @@
+package io.github.chanyanny.rag.vectorstore;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.chanyanny.rag.api.cache.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 带检索结果缓存的向量存储
+ * 缓存键由 查询向量摘要 + 过滤条件 + topK + 相似度阈值 + 所涉标签的版本号 组成
+ * 写入或删除某个标签的数据时只需对该标签的版本号加一（Redis INCR），旧缓存自然失效，多节点一致
+ * 无法从过滤条件确定标签的检索使用全局版本号，任何写入都会使其失效；
+ * 无法确定标签的删除递增清除版本号，所有缓存一起失效
+ * 查询向量在计算缓存键前固定，未命中时被包装存储的检索直接复用，每次检索只嵌入一次
+ * Pinecone 写入和删除要过一段时间才对检索可见，版本号递增后的稳定期内检索结果不写缓存，
+ * 避免把尚未包含新数据的结果按新版本号缓存整个 TTL
+ */
+@Slf4j
+public class CachingVectorStore implements VectorStore, DisposableBean {
+
+    private static final String RESULT_KEY_PREFIX = "rag:cache:search:";
+
+    private static final String TAG_VERSION_KEY_PREFIX = "rag:cache:tag_version:";
+
+    private static final String GLOBAL_VERSION_KEY = "rag:cache:global_version";
+
+    private static final String PURGE_VERSION_KEY = "rag:cache:purge_version";
+
+    /**
+     * 版本号递增后的稳定期标记，键为 前缀 + 版本号键，过期即表示稳定期结束
+     */
+    private static final String SETTLING_KEY_PREFIX = "rag:cache:settling:";
+
+    private final VectorStore delegate;
+
+    private final CachingEmbeddingModel embeddingModel;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final Duration ttl;
+
+    private final Duration settleWindow;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param embeddingModel 与被包装存储共用的嵌入模型，检索期间固定的查询向量由存储内部直接复用
+     * @param settleWindow   写入或删除后多久才对检索可见，期间不写结果缓存
+     */
+    public CachingVectorStore(VectorStore delegate, CachingEmbeddingModel embeddingModel,
+                              StringRedisTemplate stringRedisTemplate, Duration ttl, Duration settleWindow) {
+        this.delegate = delegate;
+        this.embeddingModel = embeddingModel;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttl = ttl;
+        this.settleWindow = settleWindow;
+    }
+
+    /**
+     * 写入后递增所涉标签及全局版本号
+     */
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+
+        Set<String> tags = new LinkedHashSet<>();
+        for (Document document : documents) {
+            Object tag = document.getMetadata().get(TagRoutingVectorStore.KNOWLEDGE_TAG_KEY);
+            if (tag != null && !tag.toString().isBlank()) {
+                tags.add(tag.toString());
+            }
+        }
+        bumpVersions(tags);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        // 无法得知 ID 所属标签，整体失效
+        purge();
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        Set<String> tags = TagRoutingVectorStore.extractTags(filterExpression);
+        if (tags.isEmpty()) {
+            purge();
+        } else {
+            bumpVersions(tags);
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (request.getQuery() == null || request.getQuery().isBlank()) {
+            return delegate.similaritySearch(request);
+        }
+
+        String query = request.getQuery();
+        float[] embedding = embeddingModel.pin(query);
+        try {
+            CacheKey key;
+            try {
+                key = resultKey(request, embedding);
+                String cached = stringRedisTemplate.opsForValue().get(key.key());
+                if (cached != null) {
+                    stringRedisTemplate.opsForHash().increment(CacheStats.KEY, CacheStats.hitsField(CacheStats.SEARCH), 1);
+                    return deserialize(cached);
+                }
+                stringRedisTemplate.opsForHash().increment(CacheStats.KEY, CacheStats.missesField(CacheStats.SEARCH), 1);
+            } catch (Exception e) {
+                log.warn("读取检索结果缓存失败，直接检索: {}", e.getMessage());
+                return delegate.similaritySearch(request);
+            }
+
+            List<Document> documents = delegate.similaritySearch(request);
+            if (key.settling()) {
+                // 最近的写入可能尚未可见，本次结果不缓存
+                return documents;
+            }
+            try {
+                stringRedisTemplate.opsForValue().set(key.key(), serialize(documents), ttl);
+            } catch (Exception e) {
+                log.warn("写入检索结果缓存失败: {}", e.getMessage());
+            }
+            return documents;
+        } finally {
+            embeddingModel.unpin(query);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "CachingVectorStore(" + delegate.getName() + ")";
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (delegate instanceof DisposableBean disposable) {
+            disposable.destroy();
+        }
+    }
+
+    private void bumpVersions(Set<String> tags) {
+        try {
+            for (String tag : tags) {
+                bump(TAG_VERSION_KEY_PREFIX + tag);
+            }
+            bump(GLOBAL_VERSION_KEY);
+        } catch (Exception e) {
+            log.error("递增缓存版本号失败，标签: {}", tags, e);
+        }
+    }
+
+    private void purge() {
+        try {
+            bump(PURGE_VERSION_KEY);
+        } catch (Exception e) {
+            log.error("递增缓存清除版本号失败", e);
+        }
+    }
+
+    /**
+     * 递增版本号并开始稳定期
+     */
+    private void bump(String versionKey) {
+        stringRedisTemplate.opsForValue().increment(versionKey);
+        if (!settleWindow.isZero()) {
+            stringRedisTemplate.opsForValue().set(SETTLING_KEY_PREFIX + versionKey, "1", settleWindow);
+        }
+    }
+
+    /**
+     * 缓存键：查询向量摘要 | 过滤条件 | topK | 阈值 | 版本号
+     * 同一次 MGET 读取所涉版本号的稳定期标记，任一仍在稳定期内则本次结果不写缓存
+     */
+    private CacheKey resultKey(SearchRequest request, float[] embedding) {
+        Set<String> tags = request.hasFilterExpression()
+                ? new TreeSet<>(TagRoutingVectorStore.extractTags(request.getFilterExpression()))
+                : Set.of();
+
+        List<String> versionKeys = new ArrayList<>(tags.size() + 1);
+        versionKeys.add(PURGE_VERSION_KEY);
+        if (tags.isEmpty()) {
+            versionKeys.add(GLOBAL_VERSION_KEY);
+        } else {
+            tags.forEach(tag -> versionKeys.add(TAG_VERSION_KEY_PREFIX + tag));
+        }
+        List<String> keys = new ArrayList<>(versionKeys.size() * 2);
+        keys.addAll(versionKeys);
+        versionKeys.forEach(versionKey -> keys.add(SETTLING_KEY_PREFIX + versionKey));
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+
+        StringBuilder versions = new StringBuilder();
+        boolean settling = false;
+        for (int i = 0; i < versionKeys.size(); i++) {
+            versions.append(versionKeys.get(i)).append('=')
+                    .append(version(values != null ? values.get(i) : null)).append(';');
+            settling |= values != null && values.get(versionKeys.size() + i) != null;
+        }
+
+        String raw = Digests.sha256(CachingEmbeddingModel.encode(embedding).getBytes(StandardCharsets.UTF_8))
+                + "|" + (request.hasFilterExpression() ? request.getFilterExpression() : "")
+                + "|" + request.getTopK()
+                + "|" + request.getSimilarityThreshold()
+                + "|" + versions;
+        return new CacheKey(RESULT_KEY_PREFIX + Digests.sha256(raw.getBytes(StandardCharsets.UTF_8)), settling);
+    }
+
+    private static String version(String value) {
+        return value != null ? value : "0";
+    }
+
+    private String serialize(List<Document> documents) throws Exception {
+        List<CachedDocument> cached = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            cached.add(new CachedDocument(document.getId(), document.getText(), document.getMetadata(), document.getScore()));
+        }
+        return objectMapper.writeValueAsString(cached);
+    }
+
+    private List<Document> deserialize(String value) throws Exception {
+        List<CachedDocument> cached = objectMapper.readValue(value, new TypeReference<List<CachedDocument>>() {
+        });
+        List<Document> documents = new ArrayList<>(cached.size());
+        for (CachedDocument document : cached) {
+            documents.add(Document.builder()
+                    .id(document.id())
+                    .text(document.text())
+                    .metadata(document.metadata())
+                    .score(document.score())
+                    .build());
+        }
+        return documents;
+    }
+
+    /**
+     * 检索结果缓存键，以及所涉版本号是否仍在稳定期内
+     */
+    private record CacheKey(String key, boolean settling) {
+    }
+
+    /**
+     * 缓存中的检索结果，保存文档 ID、分数以及回答所需的正文和元数据
+     */
+    private record CachedDocument(String id, String text, Map<String, Object> metadata, Double score) {
+    }
+
+}
@@ -0,0 +1,136 @@
+package io.github.chanyanny.rag.vectorstore;
+
+import static io.pinecone.commons.IndexInterface.buildUpsertVectorWithUnsignedIndices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.PineconeFilterExpressionConverter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.google.protobuf.util.JsonFormat;
+
+import io.pinecone.clients.Index;
+import io.pinecone.clients.Pinecone;
+import io.pinecone.unsigned_indices_model.QueryResponseWithUnsignedIndices;
+import io.pinecone.unsigned_indices_model.VectorWithUnsignedIndices;
+
+/**
+ * 基于一个 Pinecone 索引连接的多命名空间客户端
+ * 数据格式与 PineconeVectorStore 一致（正文存放在 document_content 元数据字段），已有数据可直接读写
+ */
+public class PineconeNamespaceClient implements TagRoutingVectorStore.NamespaceClient {
+
+    /**
+     * 与 PineconeVectorStore 保持一致的正文字段
+     */
+    private static final String CONTENT_FIELD_NAME = "document_content";
+
+    private final Index index;
+
+    private final PineconeFilterExpressionConverter filterExpressionConverter = new PineconeFilterExpressionConverter();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public PineconeNamespaceClient(String apiKey, String indexName) {
+        this.index = new Pinecone.Builder(apiKey).build().getIndexConnection(indexName);
+    }
+
+    @Override
+    public void upsert(String namespace, List<Document> documents, List<float[]> embeddings) {
+        List<VectorWithUnsignedIndices> vectors = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            vectors.add(buildUpsertVectorWithUnsignedIndices(document.getId(), toList(embeddings.get(i)), null, null,
+                    metadataToStruct(document)));
+        }
+        index.upsert(vectors, namespace);
+    }
+
+    @Override
+    public void deleteByIds(String namespace, List<String> ids) {
+        index.deleteByIds(ids, namespace);
+    }
+
+    @Override
+    public void deleteByFilter(String namespace, Filter.Expression filterExpression) {
+        index.deleteByFilter(toStruct(filterExpressionConverter.convertExpression(filterExpression)), namespace);
+    }
+
+    @Override
+    public List<Document> query(String namespace, float[] embedding, SearchRequest request) {
+        Struct filter = request.hasFilterExpression()
+                ? toStruct(filterExpressionConverter.convertExpression(request.getFilterExpression()))
+                : null;
+
+        QueryResponseWithUnsignedIndices response = index.queryByVector(request.getTopK(), toList(embedding), namespace,
+                filter, false, true);
+
+        List<Document> documents = new ArrayList<>(response.getMatchesCount());
+        response.getMatchesList().forEach(match -> {
+            if (match.getScore() < request.getSimilarityThreshold()) {
+                return;
+            }
+            Struct metadataStruct = match.getMetadata();
+            Map<String, Object> metadata = structToMap(metadataStruct);
+            metadata.remove(CONTENT_FIELD_NAME);
+            metadata.put(DocumentMetadata.DISTANCE.value(), 1 - match.getScore());
+            documents.add(Document.builder()
+                    .id(match.getId())
+                    .text(metadataStruct.getFieldsOrThrow(CONTENT_FIELD_NAME).getStringValue())
+                    .metadata(metadata)
+                    .score((double) match.getScore())
+                    .build());
+        });
+        return documents;
+    }
+
+    private Struct metadataToStruct(Document document) {
+        try {
+            Struct.Builder builder = Struct.newBuilder();
+            JsonFormat.parser().ignoringUnknownFields()
+                    .merge(objectMapper.writeValueAsString(document.getMetadata()), builder);
+            builder.putFields(CONTENT_FIELD_NAME, Value.newBuilder().setStringValue(document.getText()).build());
+            return builder.build();
+        } catch (Exception e) {
+            throw new IllegalStateException("文档元数据转换失败: " + document.getId(), e);
+        }
+    }
+
+    private Map<String, Object> structToMap(Struct struct) {
+        try {
+            return objectMapper.readValue(JsonFormat.printer().print(struct), new TypeReference<Map<String, Object>>() {
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("检索结果元数据解析失败", e);
+        }
+    }
+
+    private static Struct toStruct(String json) {
+        try {
+            Struct.Builder builder = Struct.newBuilder();
+            JsonFormat.parser().merge(json, builder);
+            return builder.build();
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("过滤条件转换失败: " + json, e);
+        }
+    }
+
+    private static List<Float> toList(float[] embedding) {
+        List<Float> values = new ArrayList<>(embedding.length);
+        for (float value : embedding) {
+            values.add(value);
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,341 @@
+package io.github.chanyanny.rag.vectorstore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.DisposableBean;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按知识库标签路由的向量存储
+ * 每个 knowledgeTag 对应索引中独立的命名空间 "默认命名空间-标签"，所有命名空间共用一个索引连接，命名空间只是每次请求的参数；
+ * 跨多个命名空间的检索只嵌入一次查询，并行扇出后通过 top-K 堆合并结果
+ * 启用分片时就已存在的历史标签继续留在默认命名空间读写，不需要迁移数据
+ */
+@Slf4j
+public class TagRoutingVectorStore implements VectorStore, DisposableBean {
+
+    /**
+     * 文档元数据中的知识库标签键
+     */
+    public static final String KNOWLEDGE_TAG_KEY = "knowledgeTag";
+
+    private final EmbeddingModel embeddingModel;
+
+    private final NamespaceClient client;
+
+    /**
+     * 未携带标签的文档、历史标签的数据都在默认命名空间
+     */
+    private final String defaultNamespace;
+
+    /**
+     * 标签目录，记录历史标签和拥有独立命名空间的标签
+     */
+    private final TagCatalog tagCatalog;
+
+    /**
+     * 本节点已登记过独立命名空间的标签，避免每次写入都访问标签目录
+     */
+    private final Set<String> registeredTags = ConcurrentHashMap.newKeySet();
+
+    private final TokenCountBatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+
+    private final ExecutorService fanOutExecutor;
+
+    public TagRoutingVectorStore(EmbeddingModel embeddingModel,
+                                 NamespaceClient client,
+                                 String defaultNamespace,
+                                 TagCatalog tagCatalog,
+                                 int fanOutParallelism) {
+        this.embeddingModel = embeddingModel;
+        this.client = client;
+        this.defaultNamespace = defaultNamespace;
+        this.tagCatalog = tagCatalog;
+
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.fanOutExecutor = Executors.newFixedThreadPool(Math.max(1, fanOutParallelism), runnable -> {
+            Thread thread = new Thread(runnable, "vector-fanout-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 写入文档：一次批量嵌入，再按 knowledgeTag 所在命名空间分组写入
+     */
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptions.builder().build(), batchingStrategy);
+
+        Map<String, List<Document>> documentsByNamespace = new LinkedHashMap<>();
+        Map<String, List<float[]>> embeddingsByNamespace = new LinkedHashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            Object tag = document.getMetadata().get(KNOWLEDGE_TAG_KEY);
+            String namespace = tag == null || tag.toString().isBlank()
+                    ? defaultNamespace
+                    : namespaceForWrite(tag.toString());
+            documentsByNamespace.computeIfAbsent(namespace, key -> new ArrayList<>()).add(document);
+            embeddingsByNamespace.computeIfAbsent(namespace, key -> new ArrayList<>()).add(embeddings.get(i));
+        }
+
+        documentsByNamespace.forEach((namespace, docs) ->
+                client.upsert(namespace, docs, embeddingsByNamespace.get(namespace)));
+    }
+
+    /**
+     * 按 ID 删除：ID 可能位于任意命名空间，因此广播到所有命名空间
+     */
+    @Override
+    public void delete(List<String> idList) {
+        for (String namespace : allNamespaces()) {
+            client.deleteByIds(namespace, idList);
+        }
+    }
+
+    /**
+     * 按过滤条件删除：能解析出标签时只路由到对应命名空间，否则广播
+     */
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Set<String> tags = extractTags(filterExpression);
+        for (String namespace : tags.isEmpty() ? allNamespaces() : namespacesFor(tags)) {
+            client.deleteByFilter(namespace, filterExpression);
+        }
+    }
+
+    /**
+     * 相似度检索
+     * 1. 过滤条件能解析出标签：只查询这些标签所在的命名空间
+     * 2. 无过滤条件、无法解析出标签或标签交集为空：查询所有命名空间，结果与分片前的全库检索一致；
+     *    每多一个标签就多一次 Pinecone 查询，这是按命名空间隔离的固有代价，这类检索应尽量携带标签过滤
+     * 3. 涉及多个命名空间时查询向量只计算一次，并行扇出，按 score 用 top-K 堆合并
+     */
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        Set<String> tags = request.hasFilterExpression()
+                ? extractTags(request.getFilterExpression())
+                : Set.of();
+        Set<String> namespaces = tags.isEmpty() ? allNamespaces() : namespacesFor(tags);
+        float[] embedding = embeddingModel.embed(request.getQuery());
+
+        if (namespaces.size() == 1) {
+            return client.query(namespaces.iterator().next(), embedding, request);
+        }
+
+        List<CompletableFuture<List<Document>>> futures = new ArrayList<>(namespaces.size());
+        for (String namespace : namespaces) {
+            futures.add(CompletableFuture.supplyAsync(() -> client.query(namespace, embedding, request), fanOutExecutor));
+        }
+
+        List<List<Document>> partials = new ArrayList<>(futures.size());
+        for (CompletableFuture<List<Document>> future : futures) {
+            partials.add(future.join());
+        }
+
+        return mergeTopK(partials, request.getTopK());
+    }
+
+    @Override
+    public String getName() {
+        return "TagRoutingVectorStore";
+    }
+
+    @Override
+    public void destroy() {
+        fanOutExecutor.shutdownNow();
+    }
+
+    /**
+     * 标签所在的命名空间：历史标签在默认命名空间，其余标签各自独立
+     */
+    String namespaceOf(String tag) {
+        return tagCatalog.isLegacy(tag) ? defaultNamespace : defaultNamespace + "-" + tag;
+    }
+
+    /**
+     * 写入前确定命名空间，独立命名空间的标签登记到标签目录，供无标签检索扇出
+     */
+    private String namespaceForWrite(String tag) {
+        String namespace = namespaceOf(tag);
+        if (!namespace.equals(defaultNamespace) && registeredTags.add(tag)) {
+            tagCatalog.registerShard(tag);
+        }
+        return namespace;
+    }
+
+    private Set<String> namespacesFor(Set<String> tags) {
+        Set<String> namespaces = new LinkedHashSet<>();
+        for (String tag : tags) {
+            namespaces.add(namespaceOf(tag));
+        }
+        return namespaces;
+    }
+
+    /**
+     * 默认命名空间及所有拥有独立命名空间的标签
+     */
+    private Set<String> allNamespaces() {
+        Set<String> namespaces = new LinkedHashSet<>();
+        namespaces.add(defaultNamespace);
+        Set<String> shardedTags = tagCatalog.shardedTags();
+        if (shardedTags != null) {
+            shardedTags.forEach(tag -> namespaces.add(namespaceOf(tag)));
+        }
+        return namespaces;
+    }
+
+    /**
+     * 合并多个分片的检索结果，保留 score 最高的 topK 条
+     */
+    static List<Document> mergeTopK(Collection<List<Document>> partials, int topK) {
+        Comparator<Document> byScore = Comparator.comparingDouble(TagRoutingVectorStore::scoreOf);
+        PriorityQueue<Document> heap = new PriorityQueue<>(Math.max(1, topK), byScore);
+
+        for (List<Document> partial : partials) {
+            for (Document document : partial) {
+                if (heap.size() < topK) {
+                    heap.offer(document);
+                } else if (topK > 0 && scoreOf(document) > scoreOf(heap.peek())) {
+                    heap.poll();
+                    heap.offer(document);
+                }
+            }
+        }
+
+        List<Document> merged = new ArrayList<>(heap);
+        merged.sort(byScore.reversed());
+        return merged;
+    }
+
+    private static double scoreOf(Document document) {
+        return document.getScore() != null ? document.getScore() : 0.0;
+    }
+
+    /**
+     * 从过滤表达式中解析出涉及的知识库标签
+     * 支持 knowledgeTag == 'x'、knowledgeTag in ['x', 'y'] 以及它们的 OR / AND 组合
+     * 返回空集合表示无法确定标签范围
+     */
+    static Set<String> extractTags(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return extractTags(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            return Set.of();
+        }
+
+        switch (expression.type()) {
+            case EQ, IN -> {
+                if (expression.left() instanceof Filter.Key key
+                        && KNOWLEDGE_TAG_KEY.equals(key.key())
+                        && expression.right() instanceof Filter.Value value) {
+                    Set<String> tags = new LinkedHashSet<>();
+                    if (value.value() instanceof Collection<?> values) {
+                        values.forEach(v -> tags.add(String.valueOf(v)));
+                    } else {
+                        tags.add(String.valueOf(value.value()));
+                    }
+                    return tags;
+                }
+                return Set.of();
+            }
+            case OR -> {
+                // 任意一侧无法确定标签，整体就无法确定
+                Set<String> left = extractTags(expression.left());
+                Set<String> right = extractTags(expression.right());
+                if (left.isEmpty() || right.isEmpty()) {
+                    return Set.of();
+                }
+                Set<String> tags = new LinkedHashSet<>(left);
+                tags.addAll(right);
+                return tags;
+            }
+            case AND -> {
+                Set<String> left = extractTags(expression.left());
+                Set<String> right = extractTags(expression.right());
+                if (left.isEmpty()) {
+                    return right;
+                }
+                if (right.isEmpty()) {
+                    return left;
+                }
+                Set<String> tags = new LinkedHashSet<>(left);
+                tags.retainAll(right);
+                // 交集为空时同样视为无法确定标签范围，由调用方广播查询、过滤条件兜底
+                return tags;
+            }
+            default -> {
+                return Set.of();
+            }
+        }
+    }
+
+    /**
+     * 按命名空间访问同一个索引的客户端
+     * 命名空间作为每次请求的参数传入，所有命名空间共用一个连接
+     */
+    public interface NamespaceClient {
+
+        /**
+         * 写入已嵌入的文档，embeddings 与 documents 一一对应
+         */
+        void upsert(String namespace, List<Document> documents, List<float[]> embeddings);
+
+        void deleteByIds(String namespace, List<String> ids);
+
+        void deleteByFilter(String namespace, Filter.Expression filterExpression);
+
+        /**
+         * 用已计算好的查询向量检索，过滤条件、topK、相似度阈值取自 request
+         */
+        List<Document> query(String namespace, float[] embedding, SearchRequest request);
+    }
+
+    /**
+     * 标签目录
+     * 多节点共享（如存放在 Redis），决定一个标签的数据写在独立命名空间还是默认命名空间
+     */
+    public interface TagCatalog {
+
+        /**
+         * 拥有独立命名空间的标签
+         */
+        Set<String> shardedTags();
+
+        /**
+         * 是否为启用分片时就已存在的历史标签，历史标签的数据留在默认命名空间
+         */
+        boolean isLegacy(String tag);
+
+        /**
+         * 登记标签拥有独立命名空间，幂等
+         */
+        void registerShard(String tag);
+    }
+
+}
@@ -0,0 +1,190 @@
+package io.github.chanyanny.rag.vectorstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+public class CachingVectorStoreTest {
+
+    private final Map<String, String> redis = new HashMap<>();
+
+    private CountingStore delegate;
+
+    private CachingVectorStore store;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        HashOperations<String, Object, Object> hashes = mock(HashOperations.class);
+        when(template.opsForValue()).thenReturn(values);
+        when(template.<Object, Object>opsForHash()).thenReturn(hashes);
+
+        when(values.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        when(values.multiGet(anyList())).thenAnswer(invocation -> {
+            List<String> result = new ArrayList<>();
+            invocation.<List<String>>getArgument(0).forEach(key -> result.add(redis.get(key)));
+            return result;
+        });
+        when(values.increment(anyString())).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            long value = Long.parseLong(redis.getOrDefault(key, "0")) + 1;
+            redis.put(key, String.valueOf(value));
+            return value;
+        });
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any(Duration.class));
+
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyString())).thenReturn(new float[]{0.1f, 0.2f, 0.3f});
+
+        delegate = new CountingStore();
+        store = new CachingVectorStore(delegate,
+                new CachingEmbeddingModel(model, template, "test-model", Duration.ofHours(1)),
+                template, Duration.ofMinutes(10), Duration.ofSeconds(30));
+    }
+
+    @Test
+    public void repeatedSearchHitsCache() {
+        search("knowledgeTag == 'a'", 5);
+        search("knowledgeTag == 'a'", 5);
+
+        assertEquals(1, delegate.searches);
+    }
+
+    @Test
+    public void keyIncludesFilterAndTopK() {
+        search("knowledgeTag == 'a'", 5);
+        search("knowledgeTag == 'a'", 3);
+        search("knowledgeTag == 'b'", 5);
+
+        assertEquals(3, delegate.searches);
+    }
+
+    @Test
+    public void addBumpsOnlyItsTagAndGlobalVersion() {
+        search("knowledgeTag == 'a'", 5);
+        search("knowledgeTag == 'b'", 5);
+        search(null, 5);
+
+        store.add(List.of(Document.builder().text("new").metadata(TagRoutingVectorStore.KNOWLEDGE_TAG_KEY, "a").build()));
+        settle();
+
+        assertEquals("1", redis.get("rag:cache:tag_version:a"));
+        assertEquals("1", redis.get("rag:cache:global_version"));
+        assertNull(redis.get("rag:cache:tag_version:b"));
+
+        search("knowledgeTag == 'a'", 5);
+        search("knowledgeTag == 'b'", 5);
+        search(null, 5);
+        // 标签 a 和无标签检索失效，标签 b 仍命中
+        assertEquals(5, delegate.searches);
+    }
+
+    @Test
+    public void deleteByTagFilterBumpsThatTag() {
+        search("knowledgeTag == 'b'", 5);
+
+        store.delete(new FilterExpressionTextParser().parse("knowledgeTag == 'b'"));
+        settle();
+
+        assertEquals("1", redis.get("rag:cache:tag_version:b"));
+        assertNull(redis.get("rag:cache:purge_version"));
+        search("knowledgeTag == 'b'", 5);
+        assertEquals(2, delegate.searches);
+    }
+
+    @Test
+    public void deleteByIdsPurgesEverySearch() {
+        search("knowledgeTag == 'a'", 5);
+        search(null, 5);
+
+        store.delete(List.of("id-1"));
+        settle();
+
+        assertEquals("1", redis.get("rag:cache:purge_version"));
+        search("knowledgeTag == 'a'", 5);
+        search(null, 5);
+        assertEquals(4, delegate.searches);
+    }
+
+    @Test
+    public void resultsAreNotCachedWhileSettling() {
+        store.add(List.of(Document.builder().text("new").metadata(TagRoutingVectorStore.KNOWLEDGE_TAG_KEY, "a").build()));
+
+        search("knowledgeTag == 'a'", 5);
+        search("knowledgeTag == 'a'", 5);
+        assertEquals(2, delegate.searches);
+
+        settle();
+        search("knowledgeTag == 'a'", 5);
+        search("knowledgeTag == 'a'", 5);
+        assertEquals(3, delegate.searches);
+    }
+
+    private void search(String filter, int topK) {
+        SearchRequest.Builder builder = SearchRequest.builder().query("what is rag").topK(topK);
+        if (filter != null) {
+            builder.filterExpression(filter);
+        }
+        store.similaritySearch(builder.build());
+    }
+
+    /**
+     * 模拟稳定期结束：稳定期标记过期
+     */
+    private void settle() {
+        redis.keySet().removeIf(key -> key.startsWith("rag:cache:settling:"));
+    }
+
+    /**
+     * 只记录检索次数的存储
+     */
+    private static final class CountingStore implements VectorStore {
+
+        private int searches;
+
+        @Override
+        public void add(List<Document> documents) {
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            searches++;
+            return List.of(Document.builder().id("doc-" + searches).text("hit").score(0.9).build());
+        }
+    }
+
+}
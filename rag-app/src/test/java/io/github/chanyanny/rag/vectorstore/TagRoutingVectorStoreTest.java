@@ -0,0 +1,272 @@
+package io.github.chanyanny.rag.vectorstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+public class TagRoutingVectorStoreTest {
+
+    private final FilterExpressionTextParser parser = new FilterExpressionTextParser();
+
+    private RecordingClient client;
+
+    private Set<String> shardedTags;
+
+    private Set<String> legacyTags;
+
+    private TagRoutingVectorStore store;
+
+    @Before
+    public void setUp() {
+        client = new RecordingClient();
+        shardedTags = new HashSet<>();
+        legacyTags = new HashSet<>();
+
+        TagRoutingVectorStore.TagCatalog catalog = new TagRoutingVectorStore.TagCatalog() {
+            @Override
+            public Set<String> shardedTags() {
+                return shardedTags;
+            }
+
+            @Override
+            public boolean isLegacy(String tag) {
+                return legacyTags.contains(tag);
+            }
+
+            @Override
+            public void registerShard(String tag) {
+                shardedTags.add(tag);
+            }
+        };
+
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{0.1f, 0.2f});
+        when(embeddingModel.embed(anyList(), any(), any())).thenAnswer(invocation -> {
+            List<float[]> embeddings = new ArrayList<>();
+            invocation.<List<Document>>getArgument(0).forEach(document -> embeddings.add(new float[]{0.1f, 0.2f}));
+            return embeddings;
+        });
+
+        store = new TagRoutingVectorStore(embeddingModel, client, "rag", catalog, 2);
+    }
+
+    @After
+    public void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    public void extractTags_eq() {
+        assertEquals(Set.of("a"), tags("knowledgeTag == 'a'"));
+    }
+
+    @Test
+    public void extractTags_in() {
+        assertEquals(Set.of("a", "b"), tags("knowledgeTag in ['a', 'b']"));
+    }
+
+    @Test
+    public void extractTags_or() {
+        assertEquals(Set.of("a", "b"), tags("knowledgeTag == 'a' || knowledgeTag == 'b'"));
+    }
+
+    @Test
+    public void extractTags_orWithOtherKeyIsUnknown() {
+        assertTrue(tags("knowledgeTag == 'a' || author == 'x'").isEmpty());
+    }
+
+    @Test
+    public void extractTags_andNarrowsByTagSide() {
+        assertEquals(Set.of("a"), tags("knowledgeTag == 'a' && author == 'x'"));
+    }
+
+    @Test
+    public void extractTags_andIntersects() {
+        assertEquals(Set.of("b"), tags("knowledgeTag in ['a', 'b'] && knowledgeTag in ['b', 'c']"));
+    }
+
+    @Test
+    public void extractTags_andEmptyIntersection() {
+        assertTrue(tags("knowledgeTag == 'a' && knowledgeTag == 'b'").isEmpty());
+    }
+
+    @Test
+    public void extractTags_nestedGroups() {
+        assertEquals(Set.of("a", "b", "c"),
+                tags("(knowledgeTag == 'a' || (knowledgeTag == 'b' && author == 'x')) || knowledgeTag == 'c'"));
+    }
+
+    @Test
+    public void extractTags_otherKeyOnly() {
+        assertTrue(tags("author == 'x'").isEmpty());
+    }
+
+    @Test
+    public void mergeTopK_ordersByScoreDescending() {
+        List<Document> merged = TagRoutingVectorStore.mergeTopK(
+                List.of(List.of(doc("a", 0.2), doc("b", 0.9)), List.of(doc("c", 0.5))), 3);
+        assertEquals(List.of("b", "c", "a"), ids(merged));
+    }
+
+    @Test
+    public void mergeTopK_keepsOnlyTopK() {
+        List<Document> merged = TagRoutingVectorStore.mergeTopK(
+                List.of(List.of(doc("a", 0.1), doc("b", 0.8), doc("c", 0.3)), List.of(doc("d", 0.7), doc("e", 0.9))), 2);
+        assertEquals(List.of("e", "b"), ids(merged));
+    }
+
+    @Test
+    public void mergeTopK_zeroReturnsEmpty() {
+        assertTrue(TagRoutingVectorStore.mergeTopK(List.of(List.of(doc("a", 0.5))), 0).isEmpty());
+    }
+
+    @Test
+    public void mergeTopK_missingScoreRanksLast() {
+        List<Document> merged = TagRoutingVectorStore.mergeTopK(
+                List.of(List.of(Document.builder().id("n").text("n").build(), doc("a", 0.1))), 2);
+        assertEquals(List.of("a", "n"), ids(merged));
+    }
+
+    @Test
+    public void add_newTagGoesToOwnNamespaceAndLegacyTagStaysInDefault() {
+        legacyTags.add("old");
+        store.add(List.of(tagged("1", "new"), tagged("2", "old"), Document.builder().id("3").text("3").build()));
+
+        assertEquals(List.of("1"), ids(client.added.get("rag-new")));
+        assertEquals(List.of("2", "3"), ids(client.added.get("rag")));
+        assertEquals(Set.of("new"), shardedTags);
+    }
+
+    @Test
+    public void search_legacyTagReadsDefaultNamespace() {
+        legacyTags.add("old");
+        store.similaritySearch(request("knowledgeTag == 'old'"));
+
+        assertEquals(List.of("rag"), client.queried);
+    }
+
+    @Test
+    public void search_taggedQueryReadsOnlyItsNamespace() {
+        shardedTags.add("a");
+        shardedTags.add("b");
+        store.similaritySearch(request("knowledgeTag == 'a'"));
+
+        assertEquals(List.of("rag-a"), client.queried);
+    }
+
+    @Test
+    public void search_unroutableFilterFansOutToAllNamespaces() {
+        shardedTags.add("a");
+        shardedTags.add("b");
+        client.results.put("rag", List.of(doc("d", 0.4)));
+        client.results.put("rag-a", List.of(doc("a1", 0.9)));
+        client.results.put("rag-b", List.of(doc("b1", 0.6)));
+
+        List<Document> results = store.similaritySearch(request("knowledgeTag == 'a' || author == 'x'"));
+
+        assertEquals(List.of("a1", "b1", "d"), ids(results));
+        assertEquals(Set.of("rag", "rag-a", "rag-b"), new HashSet<>(client.queried));
+    }
+
+    @Test
+    public void search_withoutFilterFansOutToAllNamespaces() {
+        shardedTags.add("a");
+        client.results.put("rag", List.of(doc("d", 0.4)));
+        client.results.put("rag-a", List.of(doc("a1", 0.9)));
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("q").topK(5).build());
+
+        assertEquals(List.of("a1", "d"), ids(results));
+    }
+
+    @Test
+    public void deleteByIds_broadcastsToAllNamespaces() {
+        shardedTags.add("a");
+        legacyTags.add("old");
+        store.delete(List.of("1"));
+
+        assertEquals(List.of("rag", "rag-a"), client.deletedFrom);
+    }
+
+    private Set<String> tags(String expression) {
+        Filter.Expression parsed = parser.parse(expression);
+        return TagRoutingVectorStore.extractTags(parsed);
+    }
+
+    private SearchRequest request(String filter) {
+        return SearchRequest.builder().query("q").topK(5).filterExpression(filter).build();
+    }
+
+    private static Document doc(String id, double score) {
+        return Document.builder().id(id).text(id).score(score).build();
+    }
+
+    private static Document tagged(String id, String tag) {
+        return Document.builder().id(id).text(id).metadata(TagRoutingVectorStore.KNOWLEDGE_TAG_KEY, tag).build();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        List<String> ids = new ArrayList<>();
+        documents.forEach(document -> ids.add(document.getId()));
+        return ids;
+    }
+
+    /**
+     * 按命名空间记录写入、检索和删除的客户端
+     */
+    private static final class RecordingClient implements TagRoutingVectorStore.NamespaceClient {
+
+        private final Map<String, List<Document>> added = new HashMap<>();
+
+        private final Map<String, List<Document>> results = new ConcurrentHashMap<>();
+
+        private final List<String> queried = new CopyOnWriteArrayList<>();
+
+        private final List<String> deletedFrom = new ArrayList<>();
+
+        @Override
+        public void upsert(String namespace, List<Document> documents, List<float[]> embeddings) {
+            assertEquals(documents.size(), embeddings.size());
+            added.computeIfAbsent(namespace, key -> new ArrayList<>()).addAll(documents);
+        }
+
+        @Override
+        public void deleteByIds(String namespace, List<String> ids) {
+            deletedFrom.add(namespace);
+        }
+
+        @Override
+        public void deleteByFilter(String namespace, Filter.Expression filterExpression) {
+            deletedFrom.add(namespace);
+        }
+
+        @Override
+        public List<Document> query(String namespace, float[] embedding, SearchRequest request) {
+            queried.add(namespace);
+            return results.getOrDefault(namespace, List.of());
+        }
+    }
+
+}
@@ -0,0 +1,396 @@
+package io.github.chanyanny.rag.trigger.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.attributes.Attribute;
+import org.eclipse.jgit.attributes.AttributesNode;
+import org.eclipse.jgit.attributes.AttributesRule;
+import org.eclipse.jgit.ignore.IgnoreNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 嵌入前的低价值内容分类器
+ * 在文件送去 Ollama 嵌入之前识别生成文件、第三方代码、测试数据、压缩代码、高熵内容和近似重复文件，
+ * 这些文件不值得占用嵌入算力，也会给检索带来噪音
+ * 每个仓库分析任务使用一个实例（内部保存了重复检测状态），非线程安全
+ */
+@Slf4j
+public class LowValueContentClassifier {
+
+    /**
+     * 跳过原因
+     */
+    public enum SkipReason {
+        /** 命中 .gitignore */
+        GITIGNORED,
+        /** 自动生成（锁文件、生成标记、linguist-generated） */
+        GENERATED,
+        /** 第三方代码（vendor 目录、linguist-vendored） */
+        VENDORED,
+        /** 测试夹具 / 快照数据 */
+        FIXTURE,
+        /** 压缩后的代码（超长行） */
+        MINIFIED,
+        /** 高熵内容（编码数据、密钥、二进制转储） */
+        HIGH_ENTROPY,
+        /** 与已处理文件完全或近似重复 */
+        DUPLICATE
+    }
+
+    private static final Set<String> LOCK_FILES = Set.of(
+            "package-lock.json", "yarn.lock", "pnpm-lock.yaml", "npm-shrinkwrap.json",
+            "composer.lock", "gemfile.lock", "cargo.lock", "poetry.lock", "pipfile.lock", "go.sum");
+
+    private static final Set<String> VENDORED_DIRS = Set.of(
+            "vendor", "vendors", "third_party", "thirdparty", "third-party", "bower_components");
+
+    private static final Set<String> FIXTURE_DIRS = Set.of(
+            "fixtures", "__fixtures__", "testdata", "__snapshots__");
+
+    /**
+     * 二进制文档格式，字节内容不是文本，只做路径、属性判断和精确去重
+     */
+    private static final Set<String> BINARY_DOCUMENT_EXTENSIONS = Set.of(
+            ".pdf", ".doc", ".docx", ".xls", ".xlsx", ".ppt", ".pptx");
+
+    /**
+     * 生成标记只认严格写法，出现在注释行中才算：
+     * 1. @generated（Facebook / Phabricator 等工具约定）
+     * 2. Code generated ... DO NOT EDIT.（Go 约定，大小写敏感）
+     * "do not edit"、"auto-generated" 之类的宽松说法常出现在 README 等手写文档中，不作为依据
+     */
+    private static final Pattern GENERATED_MARKER = Pattern.compile(
+            "(?m)^\\s*(?://|#|/?\\*|--|<!--).*(?:@generated\\b|Code generated .+ DO NOT EDIT\\.)");
+
+    /**
+     * 只在文件头部查找生成标记
+     */
+    private static final int MARKER_SCAN_BYTES = 1024;
+
+    /**
+     * 单行超过该长度且平均行长也很长时视为压缩代码
+     */
+    private static final int MINIFIED_MAX_LINE = 1000;
+
+    private static final int MINIFIED_AVG_LINE = 200;
+
+    /**
+     * 字节熵阈值（bit/byte），普通源码和英文文本约 4~5.2，base64 等编码数据接近 6
+     */
+    private static final double HIGH_ENTROPY_BITS = 5.8;
+
+    /**
+     * 只对以 ASCII 为主的文件做熵判断，中文等多字节文本的字节熵天然偏高
+     */
+    private static final double HIGH_ENTROPY_MIN_ASCII_RATIO = 0.95;
+
+    /**
+     * SimHash 汉明距离不超过该值视为近似重复
+     */
+    private static final int NEAR_DUPLICATE_DISTANCE = 3;
+
+    /**
+     * 词数少于该值的文件只做精确去重，避免短文件误判
+     */
+    private static final int NEAR_DUPLICATE_MIN_TOKENS = 50;
+
+    private final IgnoreNode ignoreNode = new IgnoreNode();
+
+    private final AttributesNode attributesNode = new AttributesNode();
+
+    private final Set<String> contentDigests = new HashSet<>();
+
+    private final List<Long> simHashes = new ArrayList<>();
+
+    private final Map<SkipReason, List<String>> skipped = new EnumMap<>(SkipReason.class);
+
+    /**
+     * 读取仓库根目录下的 .gitignore 和 .gitattributes
+     */
+    public LowValueContentClassifier(Path repositoryRoot) {
+        Path gitignore = repositoryRoot.resolve(".gitignore");
+        if (Files.isRegularFile(gitignore)) {
+            try (InputStream in = Files.newInputStream(gitignore)) {
+                ignoreNode.parse(in);
+            } catch (IOException e) {
+                log.warn("解析 .gitignore 失败: {}", gitignore, e);
+            }
+        }
+
+        Path gitattributes = repositoryRoot.resolve(".gitattributes");
+        if (Files.isRegularFile(gitattributes)) {
+            try (InputStream in = Files.newInputStream(gitattributes)) {
+                attributesNode.parse(in);
+            } catch (IOException e) {
+                log.warn("解析 .gitattributes 失败: {}", gitattributes, e);
+            }
+        }
+    }
+
+    /**
+     * 判断文件是否应跳过嵌入
+     *
+     * @param relativePath 相对仓库根目录的路径（使用 / 分隔）
+     * @param content      文件内容
+     * @return 跳过原因，返回 null 表示需要嵌入
+     */
+    public SkipReason classify(String relativePath, byte[] content) {
+        SkipReason reason = detect(relativePath, content);
+        if (reason != null) {
+            skipped.computeIfAbsent(reason, key -> new ArrayList<>()).add(relativePath);
+        }
+        return reason;
+    }
+
+    /**
+     * 各原因的跳过数量
+     */
+    public Map<SkipReason, Integer> skippedCounts() {
+        Map<SkipReason, Integer> counts = new EnumMap<>(SkipReason.class);
+        skipped.forEach((reason, files) -> counts.put(reason, files.size()));
+        return counts;
+    }
+
+    /**
+     * 各原因跳过的文件列表（只读快照），用于生成摘要文档
+     */
+    public Map<SkipReason, List<String>> skippedFiles() {
+        Map<SkipReason, List<String>> files = new EnumMap<>(SkipReason.class);
+        skipped.forEach((reason, paths) -> files.put(reason, List.copyOf(paths)));
+        return Collections.unmodifiableMap(files);
+    }
+
+    private SkipReason detect(String relativePath, byte[] content) {
+        String lowerPath = relativePath.toLowerCase(Locale.ROOT);
+        String fileName = lowerPath.substring(lowerPath.lastIndexOf('/') + 1);
+
+        if (isGitignored(relativePath)) {
+            return SkipReason.GITIGNORED;
+        }
+
+        SkipReason attributeReason = linguistAttribute(relativePath);
+        if (attributeReason != null) {
+            return attributeReason;
+        }
+
+        String[] segments = lowerPath.split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (VENDORED_DIRS.contains(segments[i])) {
+                return SkipReason.VENDORED;
+            }
+            if (FIXTURE_DIRS.contains(segments[i])) {
+                return SkipReason.FIXTURE;
+            }
+        }
+
+        if (LOCK_FILES.contains(fileName)) {
+            return SkipReason.GENERATED;
+        }
+
+        if (fileName.contains(".min.")) {
+            return SkipReason.MINIFIED;
+        }
+
+        if (BINARY_DOCUMENT_EXTENSIONS.stream().anyMatch(fileName::endsWith)) {
+            // 生成标记、行长、字节熵和 SimHash 对二进制字节没有意义，只判断完全相同的文件
+            return contentDigests.add(sha256(content)) ? null : SkipReason.DUPLICATE;
+        }
+
+        if (hasGeneratedMarker(content)) {
+            return SkipReason.GENERATED;
+        }
+
+        if (isMinified(content)) {
+            return SkipReason.MINIFIED;
+        }
+
+        if (asciiRatio(content) >= HIGH_ENTROPY_MIN_ASCII_RATIO && entropy(content) > HIGH_ENTROPY_BITS) {
+            return SkipReason.HIGH_ENTROPY;
+        }
+
+        if (isDuplicate(content)) {
+            return SkipReason.DUPLICATE;
+        }
+
+        return null;
+    }
+
+    /**
+     * 按 .gitignore 判断
+     * 目录规则（如 build/）只匹配目录本身，git 遍历时会跳过整个目录，因此先逐级检查父目录
+     */
+    private boolean isGitignored(String relativePath) {
+        for (int slash = relativePath.indexOf('/'); slash > 0; slash = relativePath.indexOf('/', slash + 1)) {
+            if (Boolean.TRUE.equals(ignoreNode.checkIgnored(relativePath.substring(0, slash), true))) {
+                return true;
+            }
+        }
+        return Boolean.TRUE.equals(ignoreNode.checkIgnored(relativePath, false));
+    }
+
+    /**
+     * 按 .gitattributes 中的 linguist-generated / linguist-vendored 判断，后出现的规则优先
+     */
+    private SkipReason linguistAttribute(String relativePath) {
+        Boolean generated = null;
+        Boolean vendored = null;
+        for (AttributesRule rule : attributesNode.getRules()) {
+            if (!rule.isMatch(relativePath, false)) {
+                continue;
+            }
+            for (Attribute attribute : rule.getAttributes()) {
+                if ("linguist-generated".equals(attribute.getKey())) {
+                    generated = isSet(attribute);
+                } else if ("linguist-vendored".equals(attribute.getKey())) {
+                    vendored = isSet(attribute);
+                }
+            }
+        }
+        if (Boolean.TRUE.equals(generated)) {
+            return SkipReason.GENERATED;
+        }
+        if (Boolean.TRUE.equals(vendored)) {
+            return SkipReason.VENDORED;
+        }
+        return null;
+    }
+
+    private static boolean isSet(Attribute attribute) {
+        return attribute.getState() == Attribute.State.SET
+                || (attribute.getState() == Attribute.State.CUSTOM && "true".equalsIgnoreCase(attribute.getValue()));
+    }
+
+    private static boolean hasGeneratedMarker(byte[] content) {
+        String head = new String(content, 0, Math.min(content.length, MARKER_SCAN_BYTES), StandardCharsets.UTF_8);
+        return GENERATED_MARKER.matcher(head).find();
+    }
+
+    private static boolean isMinified(byte[] content) {
+        int lines = 1;
+        int maxLine = 0;
+        int current = 0;
+        for (byte b : content) {
+            if (b == '\n') {
+                lines++;
+                maxLine = Math.max(maxLine, current);
+                current = 0;
+            } else {
+                current++;
+            }
+        }
+        maxLine = Math.max(maxLine, current);
+        return maxLine > MINIFIED_MAX_LINE && content.length / lines > MINIFIED_AVG_LINE;
+    }
+
+    private static double asciiRatio(byte[] content) {
+        if (content.length == 0) {
+            return 1;
+        }
+        int ascii = 0;
+        for (byte b : content) {
+            if (b >= 0) {
+                ascii++;
+            }
+        }
+        return (double) ascii / content.length;
+    }
+
+    /**
+     * 字节级香农熵（bit/byte）
+     */
+    private static double entropy(byte[] content) {
+        if (content.length == 0) {
+            return 0;
+        }
+        int[] frequency = new int[256];
+        for (byte b : content) {
+            frequency[b & 0xff]++;
+        }
+        double entropy = 0;
+        for (int count : frequency) {
+            if (count > 0) {
+                double p = (double) count / content.length;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+        return entropy;
+    }
+
+    /**
+     * 精确重复用 SHA-256 判断，近似重复用 SimHash 的汉明距离判断
+     */
+    private boolean isDuplicate(byte[] content) {
+        if (!contentDigests.add(sha256(content))) {
+            return true;
+        }
+
+        String[] tokens = new String(content, StandardCharsets.UTF_8).toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}_]+");
+        if (tokens.length < NEAR_DUPLICATE_MIN_TOKENS) {
+            return false;
+        }
+
+        long simHash = simHash(tokens);
+        for (long seen : simHashes) {
+            if (Long.bitCount(seen ^ simHash) <= NEAR_DUPLICATE_DISTANCE) {
+                return true;
+            }
+        }
+        simHashes.add(simHash);
+        return false;
+    }
+
+    /**
+     * 以相邻 3 词为特征计算 64 位 SimHash
+     */
+    private static long simHash(String[] tokens) {
+        int[] weights = new int[64];
+        for (int i = 0; i + 2 < tokens.length; i++) {
+            long hash = fnv1a64(tokens[i] + ' ' + tokens[i + 1] + ' ' + tokens[i + 2]);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1L) == 1L ? 1 : -1;
+            }
+        }
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return simHash;
+    }
+
+    private static long fnv1a64(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -1,11 +1,23 @@
 package io.github.chanyanny.rag.trigger.http;
 
 import io.github.chanyanny.rag.api.IAIService;
+import io.github.chanyanny.rag.api.response.Response;
+import io.github.chanyanny.rag.api.response.StreamDelta;
+import io.github.chanyanny.rag.trigger.memory.ChatSessionMemory;
+import io.github.chanyanny.rag.trigger.stream.TokenStreamHub;
 import jakarta.annotation.Resource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.ollama.api.OllamaChatOptions;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 
 import reactor.core.publisher.Flux;
@@ -18,21 +30,73 @@ public class OllamaController implements IAIService {
     @Resource
     private OllamaChatModel ollamaChatModel;
 
+    @Resource
+    private ChatSessionMemory chatSessionMemory;
 
+    @Resource
+    private TokenStreamHub tokenStreamHub;
+
+
+    /**
+     * 携带 sessionId 时由服务端维护会话历史，客户端只需发送本轮消息
+     */
     @GetMapping("/ai/generate")
     @Override
     public ChatResponse generate(@RequestParam(value = "model") String model, 
-                                 @RequestParam(value = "message") String message) {
-        Prompt prompt = new Prompt(message, OllamaChatOptions.builder().model(model).build());
-        return ollamaChatModel.call(prompt);
+                                 @RequestParam(value = "message") String message,
+                                 @RequestParam(value = "sessionId", required = false) String sessionId) {
+        List<Message> messages = chatSessionMemory.buildMessages(sessionId, message);
+        Prompt prompt = new Prompt(messages, OllamaChatOptions.builder().model(model).build());
+        ChatResponse response = ollamaChatModel.call(prompt);
+
+        chatSessionMemory.record(sessionId, messages, message,
+                response.getResult().getOutput().getText(), chatSessionMemory.promptTokens(response));
+        return response;
+    }
+
+    /**
+     * 流式生成
+     * 推送批量合并的增量文本、心跳，客户端断开后取消生成；
+     * EventSource 自动重连时携带 Last-Event-ID 请求头从断点续传，不会重新生成
+     */
+    @GetMapping(value = "/ai/generateStream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Override
+    public Flux<ServerSentEvent<StreamDelta>> generateStream(@RequestParam(value = "model") String model, 
+                                                             @RequestParam(value = "message") String message,
+                                                             @RequestParam(value = "sessionId", required = false) String sessionId,
+                                                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return tokenStreamHub.resume(lastEventId);
+        }
+
+        List<Message> messages = chatSessionMemory.buildMessages(sessionId, message);
+        Prompt prompt = new Prompt(messages, OllamaChatOptions.builder().model(model).build());
+
+        AtomicReference<Integer> promptTokens = new AtomicReference<>();
+        Flux<String> tokens = ollamaChatModel.stream(prompt)
+                .doOnNext(chunk -> {
+                    Integer tokenCount = chatSessionMemory.promptTokens(chunk);
+                    if (tokenCount != null) {
+                        promptTokens.set(tokenCount);
+                    }
+                })
+                .map(chunk -> chunk.getResult() != null && chunk.getResult().getOutput().getText() != null
+                        ? chunk.getResult().getOutput().getText()
+                        : "");
+
+        // 生成结束后写入会话历史
+        return tokenStreamHub.open(tokens,
+                answer -> chatSessionMemory.record(sessionId, messages, message, answer, promptTokens.get()));
     }
 
-    @GetMapping("/ai/generateStream")
+    @GetMapping("/ai/session/stats")
     @Override
-    public Flux<ChatResponse> generateStream(@RequestParam(value = "model") String model, 
-                                             @RequestParam(value = "message") String message) {
-        Prompt prompt = new Prompt(message, OllamaChatOptions.builder().model(model).build());
-        return ollamaChatModel.stream(prompt);
+    public Response<Map<String, Long>> querySessionStats(@RequestParam(value = "sessionId") String sessionId) {
+        return Response.<Map<String, Long>>builder()
+                .code("200")
+                .info("查询会话统计成功")
+                .data(chatSessionMemory.stats(sessionId))
+                .build();
     }
 
 }
@@ -6,7 +6,10 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,6 +23,7 @@ import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.core.io.PathResource;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -29,8 +33,13 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import io.github.chanyanny.rag.api.IRAGService;
+import io.github.chanyanny.rag.api.cache.CacheStats;
 import io.github.chanyanny.rag.api.response.Response;
+import io.github.chanyanny.rag.api.tag.KnowledgeTags;
+import io.github.chanyanny.rag.trigger.filter.LowValueContentClassifier;
+import io.github.chanyanny.rag.trigger.upload.StreamingUploadProcessor;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -50,7 +59,13 @@ public class RAGController implements IRAGService {
     @Resource
     private RedisTemplate<String, String> redisTemplate;
 
-    private static final String ALL_TAGS_KEY = "rag:all_tags";
+
+    @Resource
+    private StreamingUploadProcessor streamingUploadProcessor;
+
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
 
     /**
      * 查询知识库标签列表
@@ -63,7 +78,7 @@ public class RAGController implements IRAGService {
         log.info("开始查询知识库标签列表");
         
         // 从 Redis Set 中获取所有标签
-        Set<String> tagSet = redisTemplate.opsForSet().members(ALL_TAGS_KEY);
+        Set<String> tagSet = redisTemplate.opsForSet().members(KnowledgeTags.ALL_TAGS_KEY);
         
         // 转换为 List（接口返回类型要求）
         List<String> tags = tagSet != null ? new ArrayList<>(tagSet) : new ArrayList<>();
@@ -77,6 +92,31 @@ public class RAGController implements IRAGService {
                 .build();
     }
 
+    /**
+     * 查询检索缓存命中率
+     * 计数由各节点累加在 Redis Hash 中，返回的是集群整体命中率
+     */
+    @Override
+    @GetMapping("/queryCacheStats")
+    public Response<Map<String, String>> queryCacheStats() {
+        Map<Object, Object> counters = stringRedisTemplate.opsForHash().entries(CacheStats.KEY);
+
+        Map<String, String> stats = new LinkedHashMap<>();
+        for (String level : List.of(CacheStats.EMBEDDING, CacheStats.SEARCH)) {
+            long hits = Long.parseLong(String.valueOf(counters.getOrDefault(CacheStats.hitsField(level), "0")));
+            long misses = Long.parseLong(String.valueOf(counters.getOrDefault(CacheStats.missesField(level), "0")));
+            stats.put(CacheStats.hitsField(level), String.valueOf(hits));
+            stats.put(CacheStats.missesField(level), String.valueOf(misses));
+            stats.put(level + "_hit_ratio", hits + misses == 0 ? "0.00" : String.format("%.2f", (double) hits / (hits + misses)));
+        }
+
+        return Response.<Map<String, String>>builder()
+                .code("200")
+                .info("查询缓存统计成功")
+                .data(stats)
+                .build();
+    }
+
     /**
      * 上传文件到知识库
      * 1. 读取文件并分块
@@ -120,7 +160,7 @@ public class RAGController implements IRAGService {
             log.info("所有文件上传完成，共 {} 个文档片段", totalDocuments);
 
             // 存储标签到 Redis Set（自动去重，线程安全）
-            Long addResult = redisTemplate.opsForSet().add(ALL_TAGS_KEY, tag);
+            Long addResult = redisTemplate.opsForSet().add(KnowledgeTags.ALL_TAGS_KEY, tag);
             if (addResult != null && addResult > 0) {
                 log.info("新增知识库标签到 Redis: {}", tag);
             } else {
@@ -142,6 +182,76 @@ public class RAGController implements IRAGService {
         }
     }
 
+    /**
+     * 流式上传文件到知识库
+     * 不经过 Spring 的 MultipartFile 缓冲，逐个文件边接收边解析、分块并写入向量数据库
+     */
+    @Override
+    @RequestMapping(value = "/uploadFileStream", method = RequestMethod.POST, headers = "content-type=multipart/form-data")
+    public Response<String> uploadFileStream(HttpServletRequest request) {
+        log.info("开始流式上传知识库");
+
+        try {
+            StreamingUploadProcessor.UploadResult result = streamingUploadProcessor.process(request, pineconeVectorStore);
+            String tag = result.getTag();
+            if (tag == null || tag.isEmpty()) {
+                return Response.<String>builder()
+                        .code("400")
+                        .info("知识库标签不能为空")
+                        .build();
+            }
+
+            log.info("流式上传完成，标签: {}, 成功: {}, 失败: {}, 文档片段: {}",
+                    tag, result.getTotalFiles(), result.getFailedFiles(), result.getTotalDocuments());
+
+            // 没有任何文件写入成功时不登记标签
+            if (result.getTotalFiles() == 0) {
+                return Response.<String>builder()
+                        .code("500")
+                        .info("上传知识库失败，没有文件写入成功")
+                        .data("失败 " + result.getFailedFiles() + " 个文件")
+                        .build();
+            }
+
+            // 存储标签到 Redis Set（自动去重，线程安全）
+            Long addResult = redisTemplate.opsForSet().add(KnowledgeTags.ALL_TAGS_KEY, tag);
+            if (addResult != null && addResult > 0) {
+                log.info("新增知识库标签到 Redis: {}", tag);
+            }
+
+            String summary = "共上传 " + result.getTotalFiles() + " 个文件，失败 " + result.getFailedFiles()
+                    + " 个，" + result.getTotalDocuments() + " 个文档片段";
+            if (result.getError() != null) {
+                // 请求中途失败，但已写入的文件照常登记标签，客户端可只重传剩余文件
+                return Response.<String>builder()
+                        .code("200")
+                        .info("上传知识库部分完成，请求中断: " + result.getError())
+                        .data(summary)
+                        .build();
+            }
+
+            return Response.<String>builder()
+                    .code("200")
+                    .info("上传知识库成功")
+                    .data(summary)
+                    .build();
+
+        } catch (IllegalArgumentException e) {
+            log.error("参数错误: {}", e.getMessage());
+            return Response.<String>builder()
+                    .code("400")
+                    .info("参数错误: " + e.getMessage())
+                    .build();
+
+        } catch (Exception e) {
+            log.error("流式上传知识库失败", e);
+            return Response.<String>builder()
+                    .code("500")
+                    .info("上传知识库失败: " + e.getMessage())
+                    .build();
+        }
+    }
+
     /**
      * 分析 Git 仓库并上传到向量数据库
      * 
@@ -207,8 +317,12 @@ public class RAGController implements IRAGService {
                 // 配置分割器（可复用，避免每次创建）
                 TokenTextSplitter splitter = new TokenTextSplitter();
 
+                // 嵌入前过滤生成文件、第三方代码、压缩代码和重复文件
+                final Path repoRoot = Paths.get(startPath);
+                final LowValueContentClassifier classifier = new LowValueContentClassifier(repoRoot);
+
                 // 遍历仓库中的所有文件
-                Files.walkFileTree(Paths.get(startPath), new SimpleFileVisitor<Path>() {
+                Files.walkFileTree(repoRoot, new SimpleFileVisitor<Path>() {
 
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
@@ -236,6 +350,14 @@ public class RAGController implements IRAGService {
                         return FileVisitResult.CONTINUE;
                     }
 
+                    // 低价值内容过滤
+                    String relativePath = repoRoot.relativize(file).toString().replace(File.separatorChar, '/');
+                    LowValueContentClassifier.SkipReason skipReason = classifier.classify(relativePath, Files.readAllBytes(file));
+                    if (skipReason != null) {
+                        log.info("跳过低价值文件: {} ({})", relativePath, skipReason);
+                        return FileVisitResult.CONTINUE;
+                    }
+
                     log.info("处理文件 [{}/{}]: {}",
                             processedFiles.get() + 1,
                             totalFiles.get(),
@@ -285,17 +407,41 @@ public class RAGController implements IRAGService {
 
         });
 
+                // 生成文件、第三方代码等只写入一份文件清单摘要，不嵌入正文
+                List<Document> skippedSummaries = new ArrayList<>();
+                classifier.skippedFiles().forEach((reason, files) -> {
+                    if (reason == LowValueContentClassifier.SkipReason.GITIGNORED
+                            || reason == LowValueContentClassifier.SkipReason.DUPLICATE) {
+                        return;
+                    }
+                    skippedSummaries.add(new Document("以下文件被识别为 " + reason + "，未嵌入正文：\n" + String.join("\n", files)));
+                });
+                if (!skippedSummaries.isEmpty()) {
+                    List<Document> splitSummaries = splitter.apply(skippedSummaries);
+                    splitSummaries.forEach(doc -> {
+                        doc.getMetadata().put("knowledgeTag", projectName);
+                        doc.getMetadata().put("fileName", "skipped-files");
+                    });
+                    pineconeVectorStore.add(splitSummaries);
+                }
+
+                Map<LowValueContentClassifier.SkipReason, Integer> skippedCounts = classifier.skippedCounts();
+                String skippedDetail = skippedCounts.entrySet().stream()
+                        .map(entry -> entry.getKey() + "=" + entry.getValue())
+                        .collect(Collectors.joining(", "));
+
                 // 输出统计信息
                 log.info("========== 批量上传完成 ==========");
                 log.info("总文件数: {}", totalFiles.get());
                 log.info("处理成功: {}", processedFiles.get());
                 log.info("处理失败: {}", failedFiles.get());
                 log.info("跳过文件: {}", totalFiles.get() - processedFiles.get() - failedFiles.get());
+                log.info("低价值文件: {}", skippedDetail);
                 log.info("文档片段总数: {}", totalDocuments.get());
                 log.info("=====================================");
 
                 // 7. 存储标签到 Redis Set（自动去重，线程安全）
-                Long addResult = redisTemplate.opsForSet().add(ALL_TAGS_KEY, projectName);
+                Long addResult = redisTemplate.opsForSet().add(KnowledgeTags.ALL_TAGS_KEY, projectName);
                 if (addResult != null && addResult > 0) {
                     log.info("新增知识库标签到 Redis: {}", projectName);
                 } else {
@@ -307,8 +453,8 @@ public class RAGController implements IRAGService {
                 return Response.<String>builder()
                         .code("200")
                         .info("分析完成")
-                        .data(String.format("项目: %s, 成功: %d, 失败: %d, 文档片段: %d", 
-                            projectName, processedFiles.get(), failedFiles.get(), totalDocuments.get()))
+                        .data(String.format("项目: %s, 成功: %d, 失败: %d, 文档片段: %d, 低价值跳过: [%s]", 
+                            projectName, processedFiles.get(), failedFiles.get(), totalDocuments.get(), skippedDetail))
                         .build();
             }
             
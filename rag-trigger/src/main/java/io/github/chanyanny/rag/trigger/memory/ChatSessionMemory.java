@@ -0,0 +1,403 @@
+package io.github.chanyanny.rag.trigger.memory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于 Redis 的会话记忆
+ * 1. 每个会话的历史消息存放在 Redis List 中，组装提示词时只取最近的、不超过 token 窗口的消息
+ * 2. 超出窗口的旧消息在后台压缩进滚动摘要，Redis 中的历史和每轮提示词大小都保持有界
+ * 3. 记录每个会话的提示词 token 统计
+ */
+@Slf4j
+@Component
+public class ChatSessionMemory {
+
+    private static final String KEY_PREFIX = "rag:chat:session:";
+
+    private static final String ROLE_USER = "user";
+
+    private static final String ROLE_ASSISTANT = "assistant";
+
+    /**
+     * 只有锁的值仍是自己的令牌时才删除，避免锁过期后误删其他节点持有的锁
+     */
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    /**
+     * 提交压缩结果：仍持有锁、且列表头部和被压缩的最后一条与读取时一致才写摘要、裁剪历史、扣减 token 统计
+     * 锁已过期被其他任务取得，或列表已被其他任务裁剪时返回 0，本次结果作废
+     * KEYS: 锁, 历史, 摘要, 统计  ARGV: 令牌, 读取时的头部, 被压缩的最后一条, 保留起始下标, 新摘要, 释放的 token 数
+     */
+    private static final RedisScript<Long> COMMIT_COMPACTION_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end
+            local keepFrom = tonumber(ARGV[4])
+            if redis.call('lindex', KEYS[2], 0) ~= ARGV[2] then return 0 end
+            if redis.call('lindex', KEYS[2], keepFrom - 1) ~= ARGV[3] then return 0 end
+            redis.call('set', KEYS[3], ARGV[5])
+            redis.call('ltrim', KEYS[2], keepFrom, -1)
+            redis.call('hincrby', KEYS[4], 'historyTokens', -tonumber(ARGV[6]))
+            return 1
+            """, Long.class);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private OllamaChatModel ollamaChatModel;
+
+    /**
+     * 每轮提示词中携带的历史消息 token 上限
+     */
+    @Value("${rag.chat.memory.window-tokens:2048}")
+    private int windowTokens;
+
+    /**
+     * Redis 中累计的历史 token 超过该值时触发后台摘要压缩
+     */
+    @Value("${rag.chat.memory.compact-trigger-tokens:4096}")
+    private int compactTriggerTokens;
+
+    /**
+     * 会话过期时间（小时）
+     */
+    @Value("${rag.chat.memory.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ExecutorService compactExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-memory-compact");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 组装本轮提示词消息：摘要 + 窗口内的历史消息 + 当前用户消息
+     * 未携带会话 ID 时保持无状态，只包含当前消息
+     */
+    public List<Message> buildMessages(String sessionId, String message) {
+        List<Message> messages = new ArrayList<>();
+        if (isStateless(sessionId)) {
+            messages.add(new UserMessage(message));
+            return messages;
+        }
+
+        String summary = stringRedisTemplate.opsForValue().get(summaryKey(sessionId));
+        if (summary != null && !summary.isBlank()) {
+            messages.add(new SystemMessage("以下是此前对话的摘要，请结合摘要继续对话：\n" + summary));
+        }
+
+        for (ChatTurn turn : windowTurns(loadTurns(sessionId))) {
+            messages.add(ROLE_USER.equals(turn.role())
+                    ? new UserMessage(turn.content())
+                    : new AssistantMessage(turn.content()));
+        }
+
+        messages.add(new UserMessage(message));
+        return messages;
+    }
+
+    /**
+     * 记录一轮问答，并在历史过长时触发后台压缩
+     *
+     * @param promptTokens 模型返回的提示词 token 数，为空时使用估算值
+     */
+    public void record(String sessionId, List<Message> promptMessages, String message, String answer, Integer promptTokens) {
+        if (isStateless(sessionId)) {
+            return;
+        }
+
+        ChatTurn userTurn = turn(ROLE_USER, message);
+        ChatTurn assistantTurn = turn(ROLE_ASSISTANT, stripThinking(answer));
+        stringRedisTemplate.opsForList().rightPushAll(historyKey(sessionId), toJson(userTurn), toJson(assistantTurn));
+
+        long tokens = promptTokens != null ? promptTokens : estimate(promptMessages);
+        String statsKey = statsKey(sessionId);
+        stringRedisTemplate.opsForHash().increment(statsKey, "turns", 1);
+        stringRedisTemplate.opsForHash().put(statsKey, "lastPromptTokens", String.valueOf(tokens));
+        stringRedisTemplate.opsForHash().increment(statsKey, "totalPromptTokens", tokens);
+        Long historyTokens = stringRedisTemplate.opsForHash()
+                .increment(statsKey, "historyTokens", userTurn.tokens() + assistantTurn.tokens());
+
+        touch(sessionId);
+
+        if (historyTokens != null && historyTokens > compactTriggerTokens) {
+            compactExecutor.execute(() -> compact(sessionId));
+        }
+    }
+
+    /**
+     * 从模型返回中读取提示词 token 数
+     */
+    public Integer promptTokens(ChatResponse response) {
+        if (response == null || response.getMetadata() == null || response.getMetadata().getUsage() == null) {
+            return null;
+        }
+        Integer promptTokens = response.getMetadata().getUsage().getPromptTokens();
+        return promptTokens != null && promptTokens > 0 ? promptTokens : null;
+    }
+
+    /**
+     * 查询会话的 token 统计
+     */
+    public Map<String, Long> stats(String sessionId) {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("turns", 0L);
+        stats.put("lastPromptTokens", 0L);
+        stats.put("totalPromptTokens", 0L);
+        stats.put("historyTokens", 0L);
+        stringRedisTemplate.opsForHash().entries(statsKey(sessionId))
+                .forEach((field, value) -> stats.put(field.toString(), Long.parseLong(value.toString())));
+
+        String summary = stringRedisTemplate.opsForValue().get(summaryKey(sessionId));
+        stats.put("summaryTokens", summary != null ? (long) tokenCountEstimator.estimate(summary) : 0L);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compactExecutor.shutdownNow();
+    }
+
+    /**
+     * 将窗口之外的旧消息压缩进滚动摘要
+     * 通过 Redis 锁保证同一会话在多节点下只有一个压缩任务，锁值为本次任务的唯一令牌，释放时比对后再删除
+     * 摘要可能比锁的有效期更久，结果用脚本原子提交，锁已易主或列表已被裁剪时不会重复裁剪和扣减
+     */
+    private void compact(String sessionId) {
+        String lockKey = KEY_PREFIX + sessionId + ":compacting";
+        String lockToken = UUID.randomUUID().toString();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, lockToken, Duration.ofMinutes(5));
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+
+        try {
+            // 按原始列表下标计算，无法解析的条目也占位，保证裁剪的正是读取到的这一段
+            List<String> entries = stringRedisTemplate.opsForList().range(historyKey(sessionId), 0, -1);
+            if (entries == null || entries.isEmpty()) {
+                return;
+            }
+            int keepFrom = windowStart(sessionId, entries);
+            // 保证摘要以完整的一问一答为单位
+            if (keepFrom % 2 != 0) {
+                keepFrom--;
+            }
+            if (keepFrom <= 0) {
+                return;
+            }
+
+            List<ChatTurn> expired = new ArrayList<>();
+            for (String entry : entries.subList(0, keepFrom)) {
+                ChatTurn turn = parseTurn(sessionId, entry);
+                if (turn != null) {
+                    expired.add(turn);
+                }
+            }
+            String summary = stringRedisTemplate.opsForValue().get(summaryKey(sessionId));
+            String newSummary = summarize(summary, expired);
+            long compactedTokens = expired.stream().mapToLong(ChatTurn::tokens).sum();
+
+            // 新消息只会追加到列表尾部，提交时校验锁和列表头部，避免锁过期后重复裁剪
+            Long committed = stringRedisTemplate.execute(COMMIT_COMPACTION_SCRIPT,
+                    List.of(lockKey, historyKey(sessionId), summaryKey(sessionId), statsKey(sessionId)),
+                    lockToken, entries.get(0), entries.get(keepFrom - 1), String.valueOf(keepFrom), newSummary,
+                    String.valueOf(compactedTokens));
+            if (committed == null || committed == 0) {
+                log.warn("会话 {} 压缩期间锁已失效或历史已变化，放弃本次结果", sessionId);
+                return;
+            }
+            touch(sessionId);
+
+            log.info("会话 {} 压缩完成，合并 {} 条消息，释放约 {} tokens", sessionId, expired.size(), compactedTokens);
+        } catch (Exception e) {
+            log.error("会话 {} 压缩失败", sessionId, e);
+        } finally {
+            try {
+                stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(lockKey), lockToken);
+            } catch (Exception e) {
+                log.warn("会话 {} 释放压缩锁失败，等待锁自动过期: {}", sessionId, e.getMessage());
+            }
+        }
+    }
+
+    private String summarize(String summary, List<ChatTurn> turns) {
+        StringBuilder conversation = new StringBuilder();
+        for (ChatTurn turn : turns) {
+            conversation.append(ROLE_USER.equals(turn.role()) ? "用户: " : "助手: ")
+                    .append(turn.content())
+                    .append('\n');
+        }
+
+        String instruction = """
+                请把已有摘要和新的对话内容合并成一份简洁的中文摘要，保留事实、结论和用户的偏好，不超过 300 字。
+                只输出摘要本身。
+
+                已有摘要：
+                %s
+
+                新的对话：
+                %s
+                """.formatted(summary != null ? summary : "无", conversation);
+
+        ChatResponse response = ollamaChatModel.call(new Prompt(instruction));
+        return stripThinking(response.getResult().getOutput().getText());
+    }
+
+    /**
+     * 从最新消息往前取，直到达到 token 窗口上限
+     */
+    private List<ChatTurn> windowTurns(List<ChatTurn> turns) {
+        List<ChatTurn> window = new ArrayList<>();
+        long used = 0;
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            ChatTurn turn = turns.get(i);
+            if (used + turn.tokens() > windowTokens) {
+                break;
+            }
+            used += turn.tokens();
+            window.add(turn);
+        }
+        Collections.reverse(window);
+        return window;
+    }
+
+    /**
+     * 从最新消息往前累计 token，返回窗口内第一条消息在原始列表中的下标
+     */
+    private int windowStart(String sessionId, List<String> entries) {
+        long used = 0;
+        int start = entries.size();
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            ChatTurn turn = parseTurn(sessionId, entries.get(i));
+            int tokens = turn != null ? turn.tokens() : 0;
+            if (used + tokens > windowTokens) {
+                break;
+            }
+            used += tokens;
+            start = i;
+        }
+        return start;
+    }
+
+    private List<ChatTurn> loadTurns(String sessionId) {
+        List<String> entries = stringRedisTemplate.opsForList().range(historyKey(sessionId), 0, -1);
+        List<ChatTurn> turns = new ArrayList<>();
+        if (entries == null) {
+            return turns;
+        }
+        for (String entry : entries) {
+            ChatTurn turn = parseTurn(sessionId, entry);
+            if (turn != null) {
+                turns.add(turn);
+            }
+        }
+        return turns;
+    }
+
+    /**
+     * 解析一条历史消息，无法解析时返回 null
+     */
+    private ChatTurn parseTurn(String sessionId, String entry) {
+        try {
+            return objectMapper.readValue(entry, ChatTurn.class);
+        } catch (JsonProcessingException e) {
+            log.warn("会话 {} 存在无法解析的历史消息，已忽略", sessionId);
+            return null;
+        }
+    }
+
+    private ChatTurn turn(String role, String content) {
+        return new ChatTurn(role, content, tokenCountEstimator.estimate(content));
+    }
+
+    private long estimate(List<Message> messages) {
+        long tokens = 0;
+        for (Message message : messages) {
+            tokens += tokenCountEstimator.estimate(message.getText());
+        }
+        return tokens;
+    }
+
+    private String toJson(ChatTurn turn) {
+        try {
+            return objectMapper.writeValueAsString(turn);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化会话消息失败", e);
+        }
+    }
+
+    /**
+     * 去掉推理模型输出的 <think> 段落，避免占用历史窗口
+     */
+    private String stripThinking(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.replaceAll("(?s)<think>.*?</think>", "").trim();
+    }
+
+    private void touch(String sessionId) {
+        Duration ttl = Duration.ofHours(sessionTtlHours);
+        stringRedisTemplate.expire(historyKey(sessionId), ttl);
+        stringRedisTemplate.expire(summaryKey(sessionId), ttl);
+        stringRedisTemplate.expire(statsKey(sessionId), ttl);
+    }
+
+    private boolean isStateless(String sessionId) {
+        return sessionId == null || sessionId.isBlank();
+    }
+
+    private String historyKey(String sessionId) {
+        return KEY_PREFIX + sessionId + ":history";
+    }
+
+    private String summaryKey(String sessionId) {
+        return KEY_PREFIX + sessionId + ":summary";
+    }
+
+    private String statsKey(String sessionId) {
+        return KEY_PREFIX + sessionId + ":stats";
+    }
+
+    /**
+     * 会话中的一条消息及其估算 token 数
+     */
+    public record ChatTurn(String role, String content, int tokens) {
+    }
+
+}
@@ -0,0 +1,322 @@
+package io.github.chanyanny.rag.trigger.stream;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+
+import io.github.chanyanny.rag.api.response.StreamDelta;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * 流式输出中转站
+ * 1. 模型生成与 HTTP 连接解耦：生成结果写入有界重放缓冲，客户端订阅缓冲
+ * 2. 按固定间隔批量推送增量文本，定时发送心跳注释，及时发现断开的连接
+ * 3. 客户端断开且在宽限期内未重连时取消上游生成
+ * 4. 客户端携带 Last-Event-ID 重连时从断点续传，断点已超出缓冲时先补发完整文本快照
+ * 5. 慢客户端的待发送事件超过上限时断开连接，由客户端重连续传，不拖慢生成
+ */
+@Slf4j
+@Component
+public class TokenStreamHub {
+
+    public static final String EVENT_READY = "ready";
+
+    public static final String EVENT_DELTA = "delta";
+
+    public static final String EVENT_SNAPSHOT = "snapshot";
+
+    public static final String EVENT_DONE = "done";
+
+    public static final String EVENT_FAILED = "failed";
+
+    /**
+     * 单个批次最多合并的增量数
+     */
+    private static final int MAX_BATCH_TOKENS = 256;
+
+    /**
+     * 增量文本批量推送间隔（毫秒）
+     */
+    @Value("${rag.stream.flush-interval-ms:50}")
+    private long flushIntervalMillis;
+
+    /**
+     * 心跳间隔（毫秒）
+     */
+    @Value("${rag.stream.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMillis;
+
+    /**
+     * 每个流保留的可重放事件数
+     */
+    @Value("${rag.stream.replay-buffer-size:512}")
+    private int replayBufferSize;
+
+    /**
+     * 单个客户端允许积压的事件数，超过即断开
+     */
+    @Value("${rag.stream.client-buffer-size:256}")
+    private int clientBufferSize;
+
+    /**
+     * 所有客户端断开后，等待重连的宽限期（毫秒）
+     */
+    @Value("${rag.stream.disconnect-grace-ms:10000}")
+    private long disconnectGraceMillis;
+
+    /**
+     * 生成结束后保留流以便重连读取结尾的时间（毫秒）
+     */
+    @Value("${rag.stream.retain-after-complete-ms:60000}")
+    private long retainAfterCompleteMillis;
+
+    private final Map<String, StreamSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 开启新的流式生成
+     *
+     * @param tokens     上游增量文本
+     * @param onComplete 生成正常结束时回调完整文本
+     */
+    public Flux<ServerSentEvent<StreamDelta>> open(Flux<String> tokens, Consumer<String> onComplete) {
+        String streamId = UUID.randomUUID().toString().replace("-", "");
+        StreamSession session = new StreamSession(streamId);
+        sessions.put(streamId, session);
+        session.start(tokens, onComplete);
+
+        // 先下发一个带 id 的事件，连接在首个增量之前断开也能按 Last-Event-ID 续传
+        ServerSentEvent<StreamDelta> ready = ServerSentEvent.<StreamDelta>builder()
+                .id(eventId(streamId, 0))
+                .event(EVENT_READY)
+                .data(StreamDelta.builder().text("").build())
+                .build();
+        return Flux.concat(Flux.just(ready), session.attach(0));
+    }
+
+    /**
+     * 按 Last-Event-ID 续传
+     */
+    public Flux<ServerSentEvent<StreamDelta>> resume(String lastEventId) {
+        int separator = lastEventId.lastIndexOf('.');
+        StreamSession session = separator > 0 ? sessions.get(lastEventId.substring(0, separator)) : null;
+        if (session == null) {
+            return Flux.just(ServerSentEvent.<StreamDelta>builder()
+                    .event(EVENT_FAILED)
+                    .data(StreamDelta.builder().text("流已过期，无法续传").finishReason("expired").build())
+                    .build());
+        }
+
+        long lastSeq;
+        try {
+            lastSeq = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            lastSeq = 0;
+        }
+        log.info("客户端续传流 {}，断点序号 {}", session.streamId, lastSeq);
+        return session.attach(lastSeq);
+    }
+
+    private static String eventId(String streamId, long seq) {
+        return streamId + "." + seq;
+    }
+
+    /**
+     * 流中的一个事件
+     */
+    private record StreamEvent(long seq, String type, String data) {
+    }
+
+    /**
+     * 重放缓冲中缺少断点之后的事件
+     */
+    private static final class ReplayGapException extends RuntimeException {
+
+        private ReplayGapException() {
+            super("重放缓冲已不包含断点之后的事件", null, false, false);
+        }
+    }
+
+    /**
+     * 一次生成对应的流
+     */
+    private final class StreamSession {
+
+        private final String streamId;
+
+        private final Sinks.Many<StreamEvent> sink = Sinks.many().replay().limit(replayBufferSize);
+
+        private final StringBuilder text = new StringBuilder();
+
+        private final AtomicInteger subscribers = new AtomicInteger(0);
+
+        /**
+         * 最新事件序号，受 this 锁保护
+         */
+        private long seq;
+
+        /**
+         * 最后一个增量事件的序号，受 this 锁保护
+         */
+        private long textSeq;
+
+        private volatile boolean finished;
+
+        private volatile Disposable upstream;
+
+        private volatile Disposable pendingCancel;
+
+        private StreamSession(String streamId) {
+            this.streamId = streamId;
+        }
+
+        private void start(Flux<String> tokens, Consumer<String> onComplete) {
+            upstream = tokens
+                    .filter(token -> !token.isEmpty())
+                    .bufferTimeout(MAX_BATCH_TOKENS, Duration.ofMillis(flushIntervalMillis))
+                    .map(batch -> String.join("", batch))
+                    .filter(delta -> !delta.isEmpty())
+                    .subscribe(
+                            this::emitDelta,
+                            error -> {
+                                log.error("流 {} 生成失败", streamId, error);
+                                finish(EVENT_FAILED, error.getMessage());
+                            },
+                            () -> {
+                                finish(EVENT_DONE, "stop");
+                                onComplete.accept(snapshotText());
+                            });
+        }
+
+        private synchronized void emitDelta(String delta) {
+            text.append(delta);
+            textSeq = ++seq;
+            sink.tryEmitNext(new StreamEvent(seq, EVENT_DELTA, delta));
+        }
+
+        private synchronized String snapshotText() {
+            return text.toString();
+        }
+
+        private synchronized void finish(String type, String reason) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            sink.tryEmitNext(new StreamEvent(++seq, type, reason));
+            sink.tryEmitComplete();
+
+            Mono.delay(Duration.ofMillis(retainAfterCompleteMillis))
+                    .subscribe(tick -> sessions.remove(streamId));
+        }
+
+        /**
+         * 订阅断点之后的事件
+         */
+        private Flux<ServerSentEvent<StreamDelta>> attach(long lastSeq) {
+            Flux<ServerSentEvent<StreamDelta>> events = eventsAfter(lastSeq);
+
+            Flux<ServerSentEvent<StreamDelta>> heartbeats = Flux.interval(Duration.ofMillis(heartbeatIntervalMillis))
+                    .onBackpressureDrop()
+                    .map(tick -> ServerSentEvent.<StreamDelta>builder().comment("heartbeat").build());
+
+            return Flux.merge(events.onBackpressureBuffer(clientBufferSize,
+                                    dropped -> log.warn("流 {} 客户端消费过慢，断开连接等待续传", streamId),
+                                    BufferOverflowStrategy.ERROR),
+                            heartbeats)
+                    .takeUntil(event -> EVENT_DONE.equals(event.event()) || EVENT_FAILED.equals(event.event()))
+                    .doOnSubscribe(subscription -> onAttach())
+                    .doFinally(signal -> onDetach());
+        }
+
+        /**
+         * 断点之后的事件流
+         * 在订阅时（而不是组装时）判断断点是否仍在重放缓冲中；判断之后、订阅生效之前的新事件仍可能挤出缓冲，
+         * 因此再核对首个重放事件的序号，不连续时按当前状态重新判断（此时会走快照）
+         */
+        private Flux<ServerSentEvent<StreamDelta>> eventsAfter(long lastSeq) {
+            return Flux.defer(() -> {
+                long from;
+                ServerSentEvent<StreamDelta> snapshot = null;
+                synchronized (this) {
+                    long oldestRetained = Math.max(1, seq - replayBufferSize + 1);
+                    if (lastSeq + 1 < oldestRetained) {
+                        // 断点已不在重放缓冲中，先补发截至当前的完整文本
+                        from = textSeq;
+                        snapshot = toSse(new StreamEvent(textSeq, EVENT_SNAPSHOT, text.toString()));
+                    } else {
+                        from = lastSeq;
+                    }
+                }
+
+                AtomicBoolean checked = new AtomicBoolean(false);
+                Flux<ServerSentEvent<StreamDelta>> replayed = sink.asFlux()
+                        .filter(event -> event.seq() > from)
+                        .<StreamEvent>handle((event, downstream) -> {
+                            if (!checked.getAndSet(true) && event.seq() > from + 1) {
+                                downstream.error(new ReplayGapException());
+                            } else {
+                                downstream.next(event);
+                            }
+                        })
+                        .map(this::toSse)
+                        .onErrorResume(ReplayGapException.class, e -> eventsAfter(from));
+                return snapshot != null ? Flux.concat(Flux.just(snapshot), replayed) : replayed;
+            });
+        }
+
+        private void onAttach() {
+            subscribers.incrementAndGet();
+            Disposable cancel = pendingCancel;
+            if (cancel != null) {
+                cancel.dispose();
+                pendingCancel = null;
+            }
+        }
+
+        /**
+         * 最后一个客户端断开后，宽限期内没有重连则取消上游生成
+         */
+        private void onDetach() {
+            if (subscribers.decrementAndGet() > 0 || finished) {
+                return;
+            }
+            pendingCancel = Mono.delay(Duration.ofMillis(disconnectGraceMillis)).subscribe(tick -> {
+                if (subscribers.get() == 0 && !finished) {
+                    log.info("流 {} 客户端已断开，取消模型生成", streamId);
+                    Disposable generation = upstream;
+                    if (generation != null) {
+                        generation.dispose();
+                    }
+                    finish(EVENT_FAILED, "client disconnected");
+                }
+            });
+        }
+
+        private ServerSentEvent<StreamDelta> toSse(StreamEvent event) {
+            StreamDelta delta = switch (event.type()) {
+                case EVENT_DONE -> StreamDelta.builder().finishReason(event.data()).build();
+                case EVENT_FAILED -> StreamDelta.builder().finishReason("error").text(event.data()).build();
+                default -> StreamDelta.builder().text(event.data()).build();
+            };
+            return ServerSentEvent.<StreamDelta>builder()
+                    .id(eventId(streamId, event.seq()))
+                    .event(event.type())
+                    .data(delta)
+                    .build();
+        }
+    }
+
+}
@@ -0,0 +1,425 @@
+package io.github.chanyanny.rag.trigger.upload;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.PathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 流式上传处理器
+ * 1. 增量解析 multipart 请求体，每个文件到达时直接交给 Tika 解析、分块，不等整个请求缓冲完
+ * 2. 支持 zip / tar / tar.gz 压缩包和单文件 gzip，逐个条目流式处理；条目解压后的大小和条目数量都有上限
+ * 3. PDF、Office 等需要随机读取的格式才落盘到临时文件，其余格式直接读流
+ * 4. 向量写入在后台线程执行，与后续文件的上传和解析重叠；在途批次数有上限，内存占用与文件数量无关
+ */
+@Slf4j
+@Component
+public class StreamingUploadProcessor {
+
+    /**
+     * 需要随机读取、必须先落盘的格式
+     */
+    private static final Set<String> RANDOM_ACCESS_EXTENSIONS = Set.of(
+            ".pdf", ".doc", ".docx", ".xls", ".xlsx", ".ppt", ".pptx");
+
+    /**
+     * 单个文件大小上限（MB）
+     */
+    @Value("${rag.upload.max-file-size-mb:100}")
+    private long maxFileSizeMb;
+
+    /**
+     * 同时在途（已解析、等待写入向量库）的文件数上限
+     */
+    @Value("${rag.upload.max-in-flight:2}")
+    private int maxInFlight;
+
+    /**
+     * 单个压缩包（含嵌套压缩包）最多读取的条目数
+     */
+    @Value("${rag.upload.max-archive-entries:1000}")
+    private int maxArchiveEntries;
+
+    private final ExecutorService ingestExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "upload-ingest");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 流式处理上传请求
+     * 表单字段 tag 必须出现在文件之前（浏览器按 append 顺序发送）
+     * 请求中途断开或解析失败时，只要已有文件写入成功就返回部分结果（{@link UploadResult#getError()} 记录原因），
+     * 调用方据此照常登记标签；一个文件都没有成功才抛出异常
+     *
+     * @return 处理结果
+     * @throws IllegalArgumentException 请求不是 multipart 或缺少 tag
+     */
+    public UploadResult process(HttpServletRequest request, VectorStore vectorStore) throws IOException {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new IllegalArgumentException("请求必须是 multipart/form-data");
+        }
+
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        upload.setFileSizeMax(maxFileSizeBytes());
+
+        UploadResult result = new UploadResult();
+        Ingestion ingestion = new Ingestion(vectorStore, result);
+
+        try {
+            FileItemInputIterator iterator = upload.getItemIterator(request);
+            while (iterator.hasNext()) {
+                FileItemInput item = iterator.next();
+
+                if (item.isFormField()) {
+                    if ("tag".equals(item.getFieldName())) {
+                        try (InputStream stream = item.getInputStream()) {
+                            result.tag = IOUtils.toString(stream, request.getCharacterEncoding() != null
+                                    ? request.getCharacterEncoding() : "UTF-8").trim();
+                        }
+                    }
+                    continue;
+                }
+
+                if (result.tag == null || result.tag.isEmpty()) {
+                    throw new IllegalArgumentException("表单字段 tag 必须在文件之前提交");
+                }
+
+                String fileName = item.getName();
+                if (fileName == null || fileName.isEmpty()) {
+                    continue;
+                }
+
+                try (InputStream stream = item.getInputStream()) {
+                    ingestion.processEntry(fileName, stream, null);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 等待已提交的写入结束后再判断是否有文件成功
+            ingestion.awaitPending();
+            if (result.getTotalFiles() == 0) {
+                throw e;
+            }
+            log.warn("上传请求中断，已成功写入 {} 个文件: {}", result.getTotalFiles(), e.getMessage());
+            result.error = e.getMessage();
+        } finally {
+            // 等待后台写入全部完成，异常路径下也不遗留在途任务
+            ingestion.awaitPending();
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ingestExecutor.shutdownNow();
+    }
+
+    private long maxFileSizeBytes() {
+        return maxFileSizeMb * 1024 * 1024;
+    }
+
+    /**
+     * 一次上传请求的处理状态
+     */
+    private final class Ingestion {
+
+        private final VectorStore vectorStore;
+
+        private final UploadResult result;
+
+        private final TokenTextSplitter splitter = new TokenTextSplitter();
+
+        private final Semaphore inFlight = new Semaphore(Math.max(1, maxInFlight));
+
+        private final List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+        private Ingestion(VectorStore vectorStore, UploadResult result) {
+            this.vectorStore = vectorStore;
+            this.result = result;
+        }
+
+        private void awaitPending() {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        }
+
+        /**
+         * 处理一个上传条目，压缩包会展开逐个处理
+         *
+         * @param archiveEntries 所属顶层压缩包已读取的条目数（含嵌套压缩包），顶层文件为 null
+         */
+        private void processEntry(String fileName, InputStream stream, AtomicInteger archiveEntries) {
+            String lowerName = fileName.toLowerCase(Locale.ROOT);
+            AtomicInteger entries = archiveEntries != null ? archiveEntries : new AtomicInteger(0);
+            try {
+                if (lowerName.endsWith(".zip")) {
+                    ZipInputStream zip = new ZipInputStream(stream);
+                    ZipEntry entry;
+                    while ((entry = zip.getNextEntry()) != null) {
+                        if (!withinEntryLimit(fileName, entries)) {
+                            return;
+                        }
+                        if (!entry.isDirectory() && !processArchiveEntry(fileName, entry.getName(), zip, entries)) {
+                            return;
+                        }
+                    }
+                    return;
+                }
+
+                if (lowerName.endsWith(".tar") || lowerName.endsWith(".tar.gz") || lowerName.endsWith(".tgz")) {
+                    InputStream tarStream = lowerName.endsWith(".tar") ? stream : new GZIPInputStream(stream);
+                    TarArchiveInputStream tar = new TarArchiveInputStream(tarStream);
+                    TarArchiveEntry entry;
+                    while ((entry = tar.getNextEntry()) != null) {
+                        if (!withinEntryLimit(fileName, entries)) {
+                            return;
+                        }
+                        if (entry.isFile() && !processArchiveEntry(fileName, entry.getName(), tar, entries)) {
+                            return;
+                        }
+                    }
+                    return;
+                }
+
+                if (lowerName.endsWith(".gz")) {
+                    // 单文件 gzip：按去掉 .gz 的文件名处理解压后的内容，解压大小同样受单文件上限约束
+                    processArchiveEntry(fileName, fileName.substring(0, fileName.length() - 3),
+                            new GZIPInputStream(stream), entries);
+                    return;
+                }
+
+                List<Document> splitDocuments = read(fileName, stream, splitter);
+                if (splitDocuments.isEmpty()) {
+                    log.warn("文件内容为空: {}", fileName);
+                    return;
+                }
+
+                splitDocuments.forEach(doc -> {
+                    doc.getMetadata().put("knowledgeTag", result.tag);
+                    doc.getMetadata().put("fileName", fileName);
+                });
+
+                // 在途批次达到上限时阻塞读取，形成背压
+                inFlight.acquireUninterruptibly();
+                pending.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        vectorStore.add(splitDocuments);
+                        result.totalFiles.incrementAndGet();
+                        result.totalDocuments.addAndGet(splitDocuments.size());
+                        log.info("文件 {} 处理完成，分割为 {} 个文档片段", fileName, splitDocuments.size());
+                    } catch (Exception e) {
+                        result.failedFiles.incrementAndGet();
+                        log.error("文件写入向量库失败: {}", fileName, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                }, ingestExecutor));
+
+            } catch (Exception e) {
+                result.failedFiles.incrementAndGet();
+                log.error("文件处理失败: {}", fileName, e);
+            }
+        }
+
+        /**
+         * 处理压缩包中的一个条目，解压后的大小受单文件上限约束
+         *
+         * @return 是否继续读取压缩包的后续条目；条目超限时放弃整个压缩包，避免继续解压超限数据
+         */
+        private boolean processArchiveEntry(String archiveName, String entryName, InputStream archive,
+                                            AtomicInteger entries) {
+            SizeLimitedInputStream limited = new SizeLimitedInputStream(CloseShieldInputStream.wrap(archive),
+                    maxFileSizeBytes());
+            processEntry(entryName, limited, entries);
+            if (limited.isExceeded()) {
+                log.warn("压缩包 {} 中的条目 {} 超过 {}MB，放弃剩余条目", archiveName, entryName, maxFileSizeMb);
+                return false;
+            }
+            return true;
+        }
+
+        private boolean withinEntryLimit(String archiveName, AtomicInteger entries) {
+            if (entries.incrementAndGet() <= maxArchiveEntries) {
+                return true;
+            }
+            result.failedFiles.incrementAndGet();
+            log.warn("压缩包 {} 条目数超过上限 {}，放弃剩余条目", archiveName, maxArchiveEntries);
+            return false;
+        }
+    }
+
+    /**
+     * 读取并分割文件
+     * 需要随机读取的格式先落盘到临时文件，读完即删除；其余格式直接读流
+     */
+    private List<Document> read(String fileName, InputStream stream, TokenTextSplitter splitter) throws IOException {
+        String lowerName = fileName.toLowerCase(Locale.ROOT);
+        boolean randomAccess = RANDOM_ACCESS_EXTENSIONS.stream().anyMatch(lowerName::endsWith);
+
+        if (!randomAccess) {
+            return splitter.apply(new TikaDocumentReader(new NamedInputStreamResource(stream, fileName)).read());
+        }
+
+        Path tempFile = Files.createTempFile("rag-upload-", lowerName.substring(lowerName.lastIndexOf('.')));
+        try {
+            Files.copy(stream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Resource resource = new PathResource(tempFile);
+            return splitter.apply(new TikaDocumentReader(resource).read());
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 带文件名的流资源，供 Tika 根据文件名辅助识别类型
+     */
+    private static final class NamedInputStreamResource extends InputStreamResource {
+
+        private final String fileName;
+
+        private NamedInputStreamResource(InputStream inputStream, String fileName) {
+            super(inputStream);
+            this.fileName = fileName;
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+    }
+
+    /**
+     * 限制读取字节数的输入流，超过上限时抛出异常并记录超限状态
+     */
+    private static final class SizeLimitedInputStream extends FilterInputStream {
+
+        private final long maxBytes;
+
+        private long count;
+
+        private boolean exceeded;
+
+        private SizeLimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                consumed(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            consumed(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void consumed(long n) throws IOException {
+            count += n;
+            if (count > maxBytes) {
+                exceeded = true;
+                throw new IOException("解压后超过大小上限 " + maxBytes + " 字节");
+            }
+        }
+
+        private boolean isExceeded() {
+            return exceeded;
+        }
+    }
+
+    /**
+     * 流式上传结果
+     */
+    public static final class UploadResult {
+
+        private String tag;
+
+        private final AtomicInteger totalFiles = new AtomicInteger(0);
+
+        private final AtomicInteger failedFiles = new AtomicInteger(0);
+
+        private final AtomicInteger totalDocuments = new AtomicInteger(0);
+
+        private String error;
+
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * 请求中途失败的原因，完整处理时为 null
+         */
+        public String getError() {
+            return error;
+        }
+
+        public int getTotalFiles() {
+            return totalFiles.get();
+        }
+
+        public int getFailedFiles() {
+            return failedFiles.get();
+        }
+
+        public int getTotalDocuments() {
+            return totalDocuments.get();
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package io.github.chanyanny.rag.trigger.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.chanyanny.rag.trigger.filter.LowValueContentClassifier.SkipReason;
+
+public class LowValueContentClassifierTest {
+
+    private static final String[] WORDS = {
+            "vector", "store", "query", "embedding", "document", "split", "token", "index", "shard", "namespace",
+            "cache", "redis", "session", "summary", "upload", "stream", "archive", "entry", "filter", "tag",
+            "search", "result", "score", "merge", "heap", "model", "prompt", "answer", "chunk", "reader",
+            "parser", "router", "worker", "thread", "future", "request", "response", "header", "client", "server"};
+
+    @Rule
+    public TemporaryFolder repository = new TemporaryFolder();
+
+    private LowValueContentClassifier classifier;
+
+    @Before
+    public void setUp() {
+        classifier = new LowValueContentClassifier(repository.getRoot().toPath());
+    }
+
+    @Test
+    public void lockFilesAreGenerated() {
+        assertEquals(SkipReason.GENERATED, classifier.classify("package-lock.json", utf8("{\"lockfileVersion\": 3}")));
+        assertEquals(SkipReason.GENERATED, classifier.classify("web/yarn.lock", utf8("# yarn lockfile v1")));
+        assertEquals(SkipReason.GENERATED, classifier.classify("go.sum", utf8("golang.org/x/text v0.3.0 h1:abc=")));
+    }
+
+    @Test
+    public void minifiedBundleIsSkipped() {
+        StringBuilder bundle = new StringBuilder("!function(e){");
+        for (int i = 0; bundle.length() < 20_000; i++) {
+            bundle.append("var a").append(i).append("=e.call(this,").append(i).append(");");
+        }
+        bundle.append("}(window);\n");
+
+        assertEquals(SkipReason.MINIFIED, classifier.classify("dist/bundle.js", utf8(bundle.toString())));
+        assertEquals(SkipReason.MINIFIED, classifier.classify("static/app.min.js", utf8("var a=1;")));
+    }
+
+    @Test
+    public void base64BlobIsHighEntropy() {
+        byte[] raw = new byte[12_000];
+        new Random(42).nextBytes(raw);
+        String blob = Base64.getMimeEncoder().encodeToString(raw);
+
+        assertEquals(SkipReason.HIGH_ENTROPY, classifier.classify("assets/logo.json", utf8(blob)));
+    }
+
+    @Test
+    public void chineseTextIsNotHighEntropy() {
+        StringBuilder text = new StringBuilder();
+        String[] sentences = {
+                "知识库按标签拆分命名空间，检索时只查询相关的分片。\n",
+                "上传的文件先由 Tika 解析，再按令牌数分块后写入向量库。\n",
+                "会话历史超过窗口后，较早的消息会被压缩成摘要。\n",
+                "流式输出断开后可以携带 Last-Event-ID 重新连接并续传。\n"};
+        for (int i = 0; i < 200; i++) {
+            text.append(sentences[i % sentences.length]);
+        }
+
+        assertNull(classifier.classify("docs/说明.md", utf8(text.toString())));
+    }
+
+    @Test
+    public void nearDuplicatePairIsDetected() {
+        String original = words(new Random(7), 2000);
+        String edited = original.replaceFirst("^\\S+ \\S+", "renamed heading");
+
+        assertNull(classifier.classify("docs/guide.md", utf8(original)));
+        assertEquals(SkipReason.DUPLICATE, classifier.classify("docs/guide-copy.md", utf8(edited)));
+    }
+
+    @Test
+    public void exactDuplicateIsDetected() {
+        assertNull(classifier.classify("a/README.md", utf8("same short file")));
+        assertEquals(SkipReason.DUPLICATE, classifier.classify("b/README.md", utf8("same short file")));
+    }
+
+    @Test
+    public void distinctFilesAreNotDuplicates() {
+        assertNull(classifier.classify("docs/first.md", utf8(words(new Random(1), 500))));
+        assertNull(classifier.classify("docs/second.md", utf8(words(new Random(2), 500))));
+    }
+
+    @Test
+    public void readmeMentioningDoNotEditIsKept() {
+        String readme = "# Project\n\nThe files under api/ are auto-generated, do not edit them by hand.\n"
+                + "Run `make generate` instead; it is an autogenerated client.\n";
+
+        assertNull(classifier.classify("README.md", utf8(readme)));
+    }
+
+    @Test
+    public void strictGeneratedMarkersInCommentsAreGenerated() {
+        assertEquals(SkipReason.GENERATED, classifier.classify("api/client.go",
+                utf8("// Code generated by protoc-gen-go. DO NOT EDIT.\npackage api\n")));
+        assertEquals(SkipReason.GENERATED, classifier.classify("src/Schema.java",
+                utf8("/*\n * @generated by codegen\n */\npublic class Schema {}\n")));
+    }
+
+    @Test
+    public void binaryDocumentsOnlyUsePathChecks() {
+        // 以 ASCII 为主的高熵字节，按文本判断会被当成编码数据
+        byte[] raw = new byte[12_000];
+        new Random(3).nextBytes(raw);
+        byte[] pdf = utf8("%PDF-1.7\n" + Base64.getMimeEncoder().encodeToString(raw));
+
+        assertNull(classifier.classify("docs/manual.pdf", pdf));
+        assertEquals(SkipReason.DUPLICATE, classifier.classify("docs/manual-copy.pdf", pdf.clone()));
+    }
+
+    @Test
+    public void gitignoredPathsAreSkipped() throws IOException {
+        LowValueContentClassifier classifier = classifierWith("build/\n*.log\n!keep.log\n", null);
+
+        assertEquals(SkipReason.GITIGNORED, classifier.classify("build/report.txt", utf8("report")));
+        assertEquals(SkipReason.GITIGNORED, classifier.classify("web/build/app.txt", utf8("bundle")));
+        assertEquals(SkipReason.GITIGNORED, classifier.classify("logs/server.log", utf8("started")));
+        assertNull(classifier.classify("logs/keep.log", utf8("kept on purpose")));
+        assertNull(classifier.classify("src/build.md", utf8("how to build")));
+    }
+
+    @Test
+    public void linguistAttributesMarkGeneratedAndVendored() throws IOException {
+        LowValueContentClassifier classifier = classifierWith(null,
+                "api/** linguist-generated\nthird_party/** linguist-vendored=true\n");
+
+        assertEquals(SkipReason.GENERATED, classifier.classify("api/client.ts", utf8("export const a = 1;")));
+        assertEquals(SkipReason.VENDORED, classifier.classify("third_party/lib.c", utf8("int main() {}")));
+        assertNull(classifier.classify("src/main.c", utf8("int helper() {}")));
+    }
+
+    @Test
+    public void laterAttributeRuleWins() throws IOException {
+        LowValueContentClassifier classifier = classifierWith(null,
+                "gen/** linguist-generated\ngen/manual/** linguist-generated=false\n"
+                        + "lib/** linguist-vendored=false\nlib/** linguist-vendored\n");
+
+        assertEquals(SkipReason.GENERATED, classifier.classify("gen/model.go", utf8("package gen")));
+        assertNull(classifier.classify("gen/manual/notes.go", utf8("package manual")));
+        assertEquals(SkipReason.VENDORED, classifier.classify("lib/dep.js", utf8("module.exports = {};")));
+    }
+
+    @Test
+    public void explicitlyUnsetGeneratedAttributeIsKept() throws IOException {
+        LowValueContentClassifier classifier = classifierWith(null,
+                "*.pb.go linguist-generated\nhandwritten.pb.go -linguist-generated\n");
+
+        assertEquals(SkipReason.GENERATED, classifier.classify("api/service.pb.go", utf8("package api")));
+        assertNull(classifier.classify("api/handwritten.pb.go", utf8("package api // written by hand")));
+    }
+
+    @Test
+    public void skippedFilesIsReadOnly() {
+        classifier.classify("package-lock.json", utf8("{}"));
+
+        Map<SkipReason, List<String>> files = classifier.skippedFiles();
+        assertEquals(List.of("package-lock.json"), files.get(SkipReason.GENERATED));
+        assertThrows(UnsupportedOperationException.class, () -> files.remove(SkipReason.GENERATED));
+        assertThrows(UnsupportedOperationException.class, () -> files.get(SkipReason.GENERATED).add("other"));
+    }
+
+    /**
+     * 在临时仓库根目录写入 .gitignore / .gitattributes 后构造分类器，传 null 表示不写入
+     */
+    private LowValueContentClassifier classifierWith(String gitignore, String gitattributes) throws IOException {
+        if (gitignore != null) {
+            Files.writeString(repository.getRoot().toPath().resolve(".gitignore"), gitignore);
+        }
+        if (gitattributes != null) {
+            Files.writeString(repository.getRoot().toPath().resolve(".gitattributes"), gitattributes);
+        }
+        return new LowValueContentClassifier(repository.getRoot().toPath());
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(i % 12 == 11 ? ".\n" : " ");
+        }
+        return text.toString();
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
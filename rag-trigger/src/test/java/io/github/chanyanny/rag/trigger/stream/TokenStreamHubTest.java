@@ -0,0 +1,217 @@
+package io.github.chanyanny.rag.trigger.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.github.chanyanny.rag.api.response.StreamDelta;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+public class TokenStreamHubTest {
+
+    private TokenStreamHub hub;
+
+    private VirtualTimeScheduler scheduler;
+
+    private Sinks.Many<String> tokens;
+
+    private final AtomicBoolean generationCancelled = new AtomicBoolean(false);
+
+    @Before
+    public void setUp() {
+        hub = new TokenStreamHub();
+        ReflectionTestUtils.setField(hub, "flushIntervalMillis", 50L);
+        ReflectionTestUtils.setField(hub, "heartbeatIntervalMillis", 60_000L);
+        ReflectionTestUtils.setField(hub, "replayBufferSize", 4);
+        ReflectionTestUtils.setField(hub, "clientBufferSize", 2);
+        ReflectionTestUtils.setField(hub, "disconnectGraceMillis", 10_000L);
+        ReflectionTestUtils.setField(hub, "retainAfterCompleteMillis", 60_000L);
+
+        // 批量推送、心跳、宽限期都在虚拟时间上推进
+        scheduler = VirtualTimeScheduler.getOrSet();
+        tokens = Sinks.many().unicast().onBackpressureBuffer();
+    }
+
+    @After
+    public void tearDown() {
+        VirtualTimeScheduler.reset();
+    }
+
+    @Test
+    public void tokensAreBatchedAndStreamCompletes() {
+        AtomicReference<String> completed = new AtomicReference<>();
+
+        StepVerifier.create(hub.open(generation(), completed::set))
+                .assertNext(event -> assertEquals(TokenStreamHub.EVENT_READY, event.event()))
+                .then(() -> {
+                    tokens.tryEmitNext("Hello");
+                    tokens.tryEmitNext(", world");
+                    advance(50);
+                })
+                .assertNext(event -> assertDelta(event, TokenStreamHub.EVENT_DELTA, "Hello, world"))
+                .then(tokens::tryEmitComplete)
+                .assertNext(event -> {
+                    assertEquals(TokenStreamHub.EVENT_DONE, event.event());
+                    assertEquals("stop", event.data().getFinishReason());
+                    assertNull(event.data().getText());
+                })
+                .verifyComplete();
+
+        assertEquals("Hello, world", completed.get());
+    }
+
+    @Test
+    public void resumeContinuesAfterLastEventId() {
+        String streamId = openAndDisconnect();
+        emit("a");
+        emit("b");
+
+        StepVerifier.create(hub.resume(streamId + ".1"))
+                .assertNext(event -> {
+                    assertDelta(event, TokenStreamHub.EVENT_DELTA, "b");
+                    assertEquals(streamId + ".2", event.id());
+                })
+                .then(() -> emit("c"))
+                .assertNext(event -> {
+                    assertDelta(event, TokenStreamHub.EVENT_DELTA, "c");
+                    assertEquals(streamId + ".3", event.id());
+                })
+                .then(tokens::tryEmitComplete)
+                .assertNext(event -> assertEquals(TokenStreamHub.EVENT_DONE, event.event()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void resumeBehindReplayBufferGetsSnapshotDecidedAtSubscription() {
+        String streamId = openAndDisconnect();
+        emit("a");
+
+        // 组装时断点仍在缓冲中，订阅前缓冲已被挤出
+        Flux<ServerSentEvent<StreamDelta>> resumed = hub.resume(streamId + ".1");
+        for (String token : new String[]{"b", "c", "d", "e", "f"}) {
+            emit(token);
+        }
+
+        StepVerifier.create(resumed)
+                .assertNext(event -> {
+                    assertDelta(event, TokenStreamHub.EVENT_SNAPSHOT, "abcdef");
+                    assertEquals(streamId + ".6", event.id());
+                })
+                .then(() -> emit("g"))
+                .assertNext(event -> {
+                    assertDelta(event, TokenStreamHub.EVENT_DELTA, "g");
+                    assertEquals(streamId + ".7", event.id());
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    public void slowClientIsDisconnected() {
+        StepVerifier.create(hub.open(generation(), text -> {
+                }), 1)
+                .assertNext(event -> assertEquals(TokenStreamHub.EVENT_READY, event.event()))
+                .then(() -> {
+                    // 客户端不再请求，积压超过合并预取量与客户端缓冲之和
+                    for (int i = 0; i < 40; i++) {
+                        emit("t" + i);
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(event -> TokenStreamHub.EVENT_DELTA.equals(event.event()))
+                .verifyErrorMatches(Exceptions::isOverflow);
+
+        assertFalse(generationCancelled.get());
+    }
+
+    @Test
+    public void generationIsCancelledAfterGracePeriod() {
+        String streamId = openAndDisconnect();
+
+        advance(9_000);
+        assertFalse(generationCancelled.get());
+        advance(1_000);
+        assertTrue(generationCancelled.get());
+
+        StepVerifier.create(hub.resume(streamId + ".0"))
+                .assertNext(event -> {
+                    assertEquals(TokenStreamHub.EVENT_FAILED, event.event());
+                    assertEquals("error", event.data().getFinishReason());
+                    assertEquals("client disconnected", event.data().getText());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void reconnectWithinGracePeriodKeepsGeneration() {
+        String streamId = openAndDisconnect();
+        advance(5_000);
+
+        StepVerifier.create(hub.resume(streamId + ".0"))
+                .then(() -> advance(10_000))
+                .thenCancel()
+                .verify();
+
+        assertFalse(generationCancelled.get());
+    }
+
+    @Test
+    public void unknownStreamCannotBeResumed() {
+        StepVerifier.create(hub.resume("missing.3"))
+                .assertNext(event -> {
+                    assertEquals(TokenStreamHub.EVENT_FAILED, event.event());
+                    assertEquals("expired", event.data().getFinishReason());
+                })
+                .verifyComplete();
+    }
+
+    private Flux<String> generation() {
+        return tokens.asFlux().doOnCancel(() -> generationCancelled.set(true));
+    }
+
+    /**
+     * 开启流、收到 ready 后立即断开，返回流 ID
+     */
+    private String openAndDisconnect() {
+        AtomicReference<String> readyId = new AtomicReference<>();
+        StepVerifier.create(hub.open(generation(), text -> {
+                }))
+                .assertNext(event -> readyId.set(event.id()))
+                .thenCancel()
+                .verify();
+        return readyId.get().substring(0, readyId.get().lastIndexOf('.'));
+    }
+
+    /**
+     * 发出一个增量并推进到下一次批量推送
+     */
+    private void emit(String token) {
+        tokens.tryEmitNext(token);
+        advance(50);
+    }
+
+    private void advance(long millis) {
+        scheduler.advanceTimeBy(Duration.ofMillis(millis));
+    }
+
+    private static void assertDelta(ServerSentEvent<StreamDelta> event, String type, String text) {
+        assertEquals(type, event.event());
+        assertEquals(text, event.data().getText());
+    }
+
+}
@@ -0,0 +1,301 @@
+package io.github.chanyanny.rag.trigger.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class StreamingUploadProcessorTest {
+
+    private static final String BOUNDARY = "----rag-upload";
+
+    private StreamingUploadProcessor processor;
+
+    private RecordingStore store;
+
+    @Before
+    public void setUp() {
+        processor = new StreamingUploadProcessor();
+        ReflectionTestUtils.setField(processor, "maxFileSizeMb", 1L);
+        ReflectionTestUtils.setField(processor, "maxInFlight", 2);
+        ReflectionTestUtils.setField(processor, "maxArchiveEntries", 1000);
+        store = new RecordingStore();
+    }
+
+    @After
+    public void tearDown() {
+        processor.shutdown();
+    }
+
+    @Test
+    public void plainFileIsIngestedWithTag() throws IOException {
+        StreamingUploadProcessor.UploadResult result = upload(multipart().file("a.txt", text("alpha")).end());
+
+        assertEquals("docs", result.getTag());
+        assertEquals(1, result.getTotalFiles());
+        assertNull(result.getError());
+        assertEquals(List.of("a.txt"), store.fileNames());
+        assertEquals("docs", store.documents.get(0).getMetadata().get("knowledgeTag"));
+    }
+
+    @Test
+    public void zipEntriesAreIngested() throws IOException {
+        byte[] zip = zip("a.txt", text("alpha"), "dir/b.md", text("bravo"));
+
+        StreamingUploadProcessor.UploadResult result = upload(multipart().file("docs.zip", zip).end());
+
+        assertEquals(2, result.getTotalFiles());
+        assertEquals(0, result.getFailedFiles());
+        assertEquals(List.of("a.txt", "dir/b.md"), store.fileNames());
+    }
+
+    @Test
+    public void tarGzEntriesAreIngested() throws IOException {
+        byte[] tgz = gzip(tar("a.txt", text("alpha"), "b.txt", text("bravo")));
+
+        StreamingUploadProcessor.UploadResult result = upload(multipart().file("docs.tar.gz", tgz).end());
+
+        assertEquals(2, result.getTotalFiles());
+        assertEquals(List.of("a.txt", "b.txt"), store.fileNames());
+    }
+
+    @Test
+    public void singleGzipFileIsIngestedUnderInnerName() throws IOException {
+        StreamingUploadProcessor.UploadResult result = upload(
+                multipart().file("notes.txt.gz", gzip(text("notes"))).end());
+
+        assertEquals(1, result.getTotalFiles());
+        assertEquals(List.of("notes.txt"), store.fileNames());
+    }
+
+    @Test
+    public void oversizedEntryAbandonsArchive() throws IOException {
+        // 第二个条目解压后超过 1MB，压缩后很小
+        byte[] zip = zip("a.txt", text("alpha"), "big.txt", large(), "c.txt", text("charlie"));
+
+        StreamingUploadProcessor.UploadResult result = upload(multipart().file("docs.zip", zip).end());
+
+        assertEquals(1, result.getTotalFiles());
+        assertEquals(1, result.getFailedFiles());
+        assertEquals(List.of("a.txt"), store.fileNames());
+    }
+
+    @Test
+    public void oversizedGzipFileIsRejected() throws IOException {
+        StreamingUploadProcessor.UploadResult result = upload(multipart()
+                .file("big.txt.gz", gzip(large()))
+                .file("a.txt", text("alpha"))
+                .end());
+
+        assertEquals(1, result.getTotalFiles());
+        assertEquals(1, result.getFailedFiles());
+        assertEquals(List.of("a.txt"), store.fileNames());
+    }
+
+    @Test
+    public void entryLimitIsSharedWithNestedArchives() throws IOException {
+        ReflectionTestUtils.setField(processor, "maxArchiveEntries", 3);
+        byte[] inner = zip("a.txt", text("alpha"), "b.txt", text("bravo"), "c.txt", text("charlie"));
+        byte[] outer = zip("inner.zip", inner, "d.txt", text("delta"));
+
+        StreamingUploadProcessor.UploadResult result = upload(multipart().file("outer.zip", outer).end());
+
+        // inner.zip、a.txt、b.txt 用完 3 个条目，c.txt 放弃内层压缩包，d.txt 放弃外层压缩包
+        assertEquals(List.of("a.txt", "b.txt"), store.fileNames());
+        assertEquals(2, result.getFailedFiles());
+    }
+
+    @Test
+    public void interruptedRequestReturnsPartialResult() throws IOException {
+        StreamingUploadProcessor.UploadResult result = upload(multipart()
+                .file("a.txt", text("alpha"))
+                .truncatedFile("b.txt", text("bravo")));
+
+        assertEquals(1, result.getTotalFiles());
+        assertNotNull(result.getError());
+        assertEquals(List.of("a.txt"), store.fileNames());
+    }
+
+    @Test
+    public void interruptedRequestWithoutAnySuccessFails() {
+        assertThrows(IOException.class, () -> upload(multipart().truncatedFile("a.txt", text("alpha"))));
+        assertEquals(0, store.documents.size());
+    }
+
+    @Test
+    public void fileBeforeTagIsRejected() {
+        byte[] body = new Multipart().file("a.txt", text("alpha")).end();
+
+        assertThrows(IllegalArgumentException.class, () -> upload(body));
+    }
+
+    private StreamingUploadProcessor.UploadResult upload(byte[] body) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/rag/file/upload/stream");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body);
+        return processor.process(request, store);
+    }
+
+    private static Multipart multipart() {
+        return new Multipart().field("tag", "docs");
+    }
+
+    private static byte[] text(String word) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append(word).append(" section ").append(i).append(" describes the knowledge base.\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解压后约 2MB 的文本，压缩后很小
+     */
+    private static byte[] large() {
+        return "large text line\n".repeat(2 * 1024 * 1024 / 16).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按名称、内容交替传入条目
+     */
+    private static byte[] zip(Object... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry((String) entries[i]));
+                zip.write((byte[]) entries[i + 1]);
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] tar(Object... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                byte[] content = (byte[]) entries[i + 1];
+                TarArchiveEntry entry = new TarArchiveEntry((String) entries[i]);
+                entry.setSize(content.length);
+                tar.putArchiveEntry(entry);
+                tar.write(content);
+                tar.closeArchiveEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * multipart 请求体构造器
+     */
+    private static final class Multipart {
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private Multipart field(String name, String value) {
+            write("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n");
+            return this;
+        }
+
+        private Multipart file(String fileName, byte[] content) {
+            header(fileName);
+            body.writeBytes(content);
+            write("\r\n");
+            return this;
+        }
+
+        private byte[] end() {
+            write("--" + BOUNDARY + "--\r\n");
+            return body.toByteArray();
+        }
+
+        /**
+         * 文件内容只写一半且没有结束分隔符，模拟客户端中途断开
+         */
+        private byte[] truncatedFile(String fileName, byte[] content) {
+            header(fileName);
+            body.write(content, 0, content.length / 2);
+            return body.toByteArray();
+        }
+
+        private void header(String fileName) {
+            write("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + fileName
+                    + "\"\r\nContent-Type: application/octet-stream\r\n\r\n");
+        }
+
+        private void write(String text) {
+            body.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 记录写入文档的存储，写入在后台线程执行
+     */
+    private static final class RecordingStore implements VectorStore {
+
+        private final List<Document> documents = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void add(List<Document> documents) {
+            this.documents.addAll(documents);
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return List.of();
+        }
+
+        private List<String> fileNames() {
+            List<String> fileNames = new ArrayList<>();
+            synchronized (documents) {
+                documents.forEach(document -> {
+                    String fileName = (String) document.getMetadata().get("fileName");
+                    if (!fileNames.contains(fileName)) {
+                        fileNames.add(fileName);
+                    }
+                });
+            }
+            fileNames.sort(null);
+            return fileNames;
+        }
+    }
+
+}